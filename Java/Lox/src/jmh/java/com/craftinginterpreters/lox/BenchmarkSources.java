@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+// Generated Lox programs used by the benchmarks
+class BenchmarkSources {
+    private static final String LINE =
+            "var total_1 = (12.5 * count - 3) / 2; // running total\n" +
+            "{ var name = \"lox\" + \"script\"; print name != nil; }\n" +
+            "total_1 = total_1 >= 10 == !false;\n";
+
+    // Source text of at least the given size in bytes, made of a few lines that use every kind of token
+    static String ofSize(int bytes) {
+        StringBuilder builder = new StringBuilder(bytes + LINE.length());
+        while (builder.length() < bytes) {
+            builder.append(LINE);
+        }
+        return builder.toString();
+    }
+
+    // print ((((1 + 1) + 1) + 1) ...); nesting grows with depth
+    static String deepExpression(int depth) {
+        return "print " + "(".repeat(depth) + "1" + " + 1)".repeat(depth) + ";\n";
+    }
+
+    // print 1 + 2 * 3 - 4 / 5 ...; a long flat chain of operators
+    static String wideExpression(int width) {
+        StringBuilder builder = new StringBuilder("print 0");
+        String[] operators = {" + ", " * ", " - ", " / "};
+        for (int i = 1; i <= width; i++) {
+            builder.append(operators[i % operators.length]).append(i);
+        }
+        return builder.append(";\n").toString();
+    }
+
+    static String arithmetic(int statements) {
+        StringBuilder builder = new StringBuilder("var x = 1; var y = 2;\n");
+        for (int i = 0; i < statements; i++) {
+            builder.append("x = x * 1.0001 + y / 3 - 0.5;\n");
+        }
+        return builder.toString();
+    }
+
+    static String strings(int statements) {
+        StringBuilder builder = new StringBuilder("var s = \"\";\n");
+        for (int i = 0; i < statements; i++) {
+            builder.append("s = s + \"ab\";\n");
+        }
+        return builder.toString();
+    }
+
+    static String blocks(int statements) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < statements; i++) {
+            builder.append("{ var a = 1; { var b = a + 1; { var c = b + a; c = c * b; } } }\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Looks up a variable from the innermost of `depth` nested block environments,
+// once by name (walking up to the globals) and once through a resolved (depth, slot).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+    @Param({"1", "4", "16", "64"})
+    int depth;
+
+    private final Token name = new Token(TokenType.IDENTIFIER, "counter", null, 1);
+    private final Object value = 42.0;
+
+    private Environment innermost;
+
+    @Setup
+    public void setup() {
+        Environment globals = new Environment();
+        globals.define(name, value);
+
+        innermost = globals;
+        for (int i = 0; i < depth; i++) {
+            innermost = new Environment(innermost, 1);
+            innermost.defineAt(0, value);
+        }
+    }
+
+    @Benchmark
+    public Object getByName() {
+        return innermost.get(name);
+    }
+
+    @Benchmark
+    public void assignByName() {
+        innermost.assign(name, value);
+    }
+
+    // The slot of the outermost block, the same distance the name lookup walks minus the globals
+    @Benchmark
+    public Object getResolved() {
+        return innermost.getAt(depth - 1, 0);
+    }
+
+    @Benchmark
+    public void assignResolved() {
+        innermost.assignAt(depth - 1, 0, value);
+    }
+}
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalDocumentBenchmark {
+    // Every declaration is fine, or every one of them has a syntax error
+    @Param({"clean", "broken"})
+    String shape;
+
+    @Param({"1000", "100000"})
+    int lines;
+
+    private IncrementalDocument document;
+    private int end;
+
+    @Setup
+    public void setup() {
+        String line = shape.equals("clean") ? "print 1;\n" : "print ;\n";
+        document = new IncrementalDocument(line.repeat(lines));
+        end = line.length() * lines;
+    }
+
+    // Types a space at the end of the file and deletes it again, so the document is the same after each call
+    @Benchmark
+    public int typeAtEnd() {
+        document.edit(end, 0, " ");
+        document.edit(end, 1, "");
+        return document.diagnostics().size();
+    }
+}
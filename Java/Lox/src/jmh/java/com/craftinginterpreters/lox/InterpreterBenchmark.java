@@ -0,0 +1,81 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Runs the same program on every engine, everything up to execution is done once in setup
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({"arithmetic", "strings", "blocks"})
+    String program;
+
+    @Param({"interpreter", "vm", "nodes", "jvm", "closures"})
+    String engine;
+
+    @Param({"1000"})
+    int statements;
+
+    private List<Stmt> parsed;
+    private Interpreter interpreter;
+    private VM vm;
+    private Chunk chunk;
+    private NodeInterpreter nodeInterpreter;
+    private List<StmtNode> nodes;
+    private JvmInterpreter jvmInterpreter;
+    private List<MethodHandle> scripts;
+    private ClosureInterpreter closureInterpreter;
+    private List<ClosureCompiler.Executor> closures;
+
+    @Setup
+    public void setup() {
+        String source;
+        switch (program) {
+            case "arithmetic": source = BenchmarkSources.arithmetic(statements); break;
+            case "strings": source = BenchmarkSources.strings(statements); break;
+            default: source = BenchmarkSources.blocks(statements); break;
+        }
+
+        ErrorReporter reporter = new ErrorReporter(System.err);
+        parsed = new Parser(new Scanner(source).scanTokens(), reporter).parse();
+        new Resolver().resolve(parsed);
+
+        interpreter = new Interpreter();
+        vm = new VM();
+        chunk = new Compiler(reporter).compile(parsed);
+        nodeInterpreter = new NodeInterpreter();
+        nodes = nodeInterpreter.prepare(parsed);
+        jvmInterpreter = new JvmInterpreter();
+        scripts = jvmInterpreter.prepare(parsed);
+        closureInterpreter = new ClosureInterpreter();
+        closures = closureInterpreter.prepare(parsed);
+    }
+
+    @Benchmark
+    public void interpret() {
+        switch (engine) {
+            case "interpreter": interpreter.interpret(parsed); break;
+            case "vm": vm.interpret(chunk); break;
+            case "nodes": nodeInterpreter.execute(nodes); break;
+            case "jvm": jvmInterpreter.execute(scripts); break;
+            default: closureInterpreter.execute(closures); break;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ParserBenchmark {
+    @Param({"deep", "wide"})
+    String shape;
+
+    // Nesting depth for deep trees, number of operators for wide ones.
+    // The parser is recursive descent, hence the bigger thread stack for the deep ones.
+    @Param({"100", "1000"})
+    int size;
+
+    private TokenBuffer tokens;
+    private final ErrorReporter reporter = new ErrorReporter(System.err);
+
+    @Setup
+    public void setup() {
+        String source = shape.equals("deep")
+                ? BenchmarkSources.deepExpression(size)
+                : BenchmarkSources.wideExpression(size);
+        tokens = new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, reporter).parse();
+    }
+}
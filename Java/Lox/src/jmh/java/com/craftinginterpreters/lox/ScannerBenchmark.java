@@ -0,0 +1,44 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ScannerBenchmark {
+    // 1 KB, 1 MB and 100 MB of source
+    @Param({"1024", "1048576", "104857600"})
+    int size;
+
+    // The hand written Scanner or the TableScanner
+    @Param({"switch", "table"})
+    String scanner;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkSources.ofSize(size);
+    }
+
+    @Benchmark
+    public TokenBuffer scanTokens() {
+        Lexer lexer = scanner.equals("table") ? new TableScanner(source) : new Scanner(source);
+        return lexer.scanTokens();
+    }
+}
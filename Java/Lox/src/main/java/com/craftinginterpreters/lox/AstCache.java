@@ -0,0 +1,548 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Keeps parsed scripts on disk, like Python's .pyc files, so a script which hasn't changed
+// doesn't have to be scanned and parsed again. Enabled with --cache or --cache=dir.
+//
+// The file name is the SHA-256 of the interpreter version, the charset and the script bytes,
+// so editing the script (or upgrading jlox) simply misses the cache. The file starts with the
+// same key and ends with a marker, anything that doesn't check out is ignored and the script
+// is parsed as usual.
+//
+// Only what the Parser produces is stored, the Resolver and the Optimizer run again after loading.
+class AstCache {
+    private static final int MAGIC = 0x4c4f5843; // "LOXC"
+    // Bump when the layout below or the Expr and Stmt classes change
+    private static final int FORMAT = 6;
+    private static final int END = 0x454e4421; // "END!"
+
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    // Node tags
+    private static final int BLOCK = 0;
+    private static final int EXPRESSION = 1;
+    private static final int PRINT = 2;
+    private static final int VAR = 3;
+    private static final int ASSIGN = 4;
+    private static final int BINARY = 5;
+    private static final int GROUPING = 6;
+    private static final int LITERAL = 7;
+    private static final int UNARY = 8;
+    private static final int VARIABLE = 9;
+    // Stands for a missing initializer
+    private static final int NONE = 10;
+    private static final int CALL = 11;
+    private static final int SPAWN = 12;
+    private static final int ARRAY = 13;
+    private static final int INDEX = 14;
+    private static final int SET_INDEX = 15;
+    private static final int MAP = 16;
+
+    // Literal tags
+    private static final int NIL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+    // Whole numbers that fit an int, written as a variable length int
+    private static final int INTEGER = 5;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Path directory;
+
+    AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // Hashes the script without reading it into the heap
+    byte[] key(Path script, Charset charset) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        digest.update((FORMAT + "/" + Lox.VERSION + "/" + charset.name() + "/").getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(script, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += REGION_SIZE) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(REGION_SIZE, size - position));
+                digest.update(region);
+            }
+        }
+        return digest.digest();
+    }
+
+    // The cached statements, or null when there are none for this key or they can't be read
+    List<Stmt> load(byte[] key) {
+        Path file = file(key);
+        if (!Files.isRegularFile(file)) return null;
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT) return null;
+
+            byte[] stored = new byte[key.length];
+            in.get(stored);
+            if (!MessageDigest.isEqual(stored, key)) return null;
+
+            List<Stmt> statements = new Reader(in).statements();
+            if (in.getInt() != END) return null;
+            return statements;
+        } catch (IOException | RuntimeException error) {
+            // A broken or half written file is the same as no file
+            return null;
+        }
+    }
+
+    // Best effort, a cache we can't write just means parsing again next time
+    void store(byte[] key, List<Stmt> statements) {
+        Path file = file(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+
+            // Written next to the real name and moved in place, so a reader never sees half a file
+            temp = Files.createTempFile(directory, "ast", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.write(key);
+                Output body = new Writer().write(statements);
+                out.write(body.bytes, 0, body.size);
+                out.writeInt(END);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private Path file(byte[] key) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : key) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return directory.resolve(name.append(".loxc").toString());
+    }
+
+    // Counts are written as variable length ints and lines as the difference to the previous one.
+    // Strings are written once and then referred to by index, so the many copies of the same
+    // name cost a byte or two each, and operators don't store their lexeme at all.
+    private static class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        private final Output out = new Output();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private int line = 0;
+
+        Output write(List<Stmt> statements) {
+            statements(statements);
+            return out;
+        }
+
+        private void statements(List<Stmt> statements) {
+            writeInt(statements.size());
+            for (Stmt statement : statements) {
+                line(statement.line);
+                statement.accept(this);
+            }
+        }
+
+        private void expression(Expr expr) {
+            if (expr == null) {
+                out.write(NONE);
+                return;
+            }
+            expr.accept(this);
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            out.write(BLOCK);
+            statements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            out.write(EXPRESSION);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            out.write(PRINT);
+            expression(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            out.write(VAR);
+            token(stmt.name);
+            expression(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            out.write(ASSIGN);
+            token(expr.name);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            out.write(BINARY);
+            expression(expr.left);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            out.write(CALL);
+            expression(expr.callee);
+            token(expr.paren);
+            writeInt(expr.arguments.size());
+            for (Expr argument : expr.arguments) {
+                expression(argument);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitSpawnExpr(Expr.Spawn expr) {
+            out.write(SPAWN);
+            token(expr.keyword);
+            statements(expr.body.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            out.write(GROUPING);
+            expression(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitArrayExpr(Expr.Array expr) {
+            out.write(ARRAY);
+            token(expr.bracket);
+            writeInt(expr.elements.size());
+            for (Expr element : expr.elements) {
+                expression(element);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMapExpr(Expr.Map expr) {
+            out.write(MAP);
+            token(expr.brace);
+            writeInt(expr.keys.size());
+            for (int i = 0; i < expr.keys.size(); i++) {
+                expression(expr.keys.get(i));
+                expression(expr.values.get(i));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIndexExpr(Expr.Index expr) {
+            out.write(INDEX);
+            expression(expr.object);
+            token(expr.bracket);
+            expression(expr.index);
+            return null;
+        }
+
+        @Override
+        public Void visitSetIndexExpr(Expr.SetIndex expr) {
+            out.write(SET_INDEX);
+            expression(expr.object);
+            token(expr.bracket);
+            expression(expr.index);
+            expression(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            out.write(LITERAL);
+            Object value = expr.value;
+            if (value == null) {
+                out.write(NIL);
+            } else if (value instanceof Boolean) {
+                out.write((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                double number = (Double) value;
+                if (number >= 0 && number <= Integer.MAX_VALUE && number == (int) number
+                        && Double.doubleToRawLongBits(number) != Double.doubleToRawLongBits(-0.0)) {
+                    out.write(INTEGER);
+                    writeInt((int) number);
+                } else {
+                    out.write(NUMBER);
+                    long bits = Double.doubleToRawLongBits(number);
+                    for (int shift = 56; shift >= 0; shift -= 8) {
+                        out.write((int) (bits >>> shift));
+                    }
+                }
+            } else {
+                out.write(STRING);
+                string((String) value);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            out.write(UNARY);
+            token(expr.operator);
+            expression(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            out.write(VARIABLE);
+            token(expr.name);
+            return null;
+        }
+
+        // The literal of a name or operator token is always null, so it isn't stored
+        private void token(Token token) {
+            out.write(token.type.ordinal());
+            if (TokenBuffer.fixedLexeme(token.type) == null) string(token.lexeme);
+            line(token.line);
+        }
+
+        private void line(int next) {
+            // Zigzag, so small steps back are small too
+            int delta = next - line;
+            writeInt((delta << 1) ^ (delta >> 31));
+            line = next;
+        }
+
+        private void string(String string) {
+            Integer index = strings.get(string);
+            if (index != null) {
+                writeInt(index);
+                return;
+            }
+
+            // A new string is written as the next index followed by its UTF-8 bytes
+            writeInt(strings.size());
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                out.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    // Unsynchronized stand in for ByteArrayOutputStream
+    private static class Output {
+        byte[] bytes = new byte[4096];
+        int size = 0;
+
+        void write(int b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            if (size + b.length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + b.length));
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer in;
+        private final List<String> strings = new ArrayList<>();
+        private int line = 0;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Stmt> statements() {
+            int count = readInt();
+            List<Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int start = line();
+                Stmt statement = statement();
+                statement.line = start;
+                statements.add(statement);
+            }
+            return statements;
+        }
+
+        private Stmt statement() {
+            int tag = (in.get() & 0xff);
+            switch (tag) {
+                case BLOCK: return new Stmt.Block(statements());
+                case EXPRESSION: return new Stmt.Expression(expression());
+                case PRINT: return new Stmt.Print(expression());
+                case VAR: {
+                    Token name = token();
+                    return new Stmt.Var(name, expression());
+                }
+                default: throw new IllegalStateException("Bad statement tag " + tag);
+            }
+        }
+
+        private Expr expression() {
+            int tag = (in.get() & 0xff);
+            switch (tag) {
+                case NONE: return null;
+                case ASSIGN: {
+                    Token name = token();
+                    return new Expr.Assign(name, expression());
+                }
+                case BINARY: {
+                    Expr left = expression();
+                    Token operator = token();
+                    return new Expr.Binary(left, operator, expression());
+                }
+                case CALL: {
+                    Expr callee = expression();
+                    Token paren = token();
+                    int count = readInt();
+                    List<Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(expression());
+                    }
+                    return new Expr.Call(callee, paren, arguments);
+                }
+                case SPAWN: {
+                    Token keyword = token();
+                    Stmt.Block body = new Stmt.Block(statements());
+                    body.line = keyword.line;
+                    return new Expr.Spawn(keyword, body);
+                }
+                case GROUPING: return new Expr.Grouping(expression());
+                case ARRAY: {
+                    Token bracket = token();
+                    int count = readInt();
+                    List<Expr> elements = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        elements.add(expression());
+                    }
+                    return new Expr.Array(bracket, elements);
+                }
+                case MAP: {
+                    Token brace = token();
+                    int count = readInt();
+                    List<Expr> keys = new ArrayList<>(count);
+                    List<Expr> values = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        keys.add(expression());
+                        values.add(expression());
+                    }
+                    return new Expr.Map(brace, keys, values);
+                }
+                case INDEX: {
+                    Expr object = expression();
+                    Token bracket = token();
+                    return new Expr.Index(object, bracket, expression());
+                }
+                case SET_INDEX: {
+                    Expr object = expression();
+                    Token bracket = token();
+                    Expr index = expression();
+                    return new Expr.SetIndex(object, bracket, index, expression());
+                }
+                case LITERAL: return new Expr.Literal(literal());
+                case UNARY: {
+                    Token operator = token();
+                    return new Expr.Unary(operator, expression());
+                }
+                case VARIABLE: return new Expr.Variable(token());
+                default: throw new IllegalStateException("Bad expression tag " + tag);
+            }
+        }
+
+        private Object literal() {
+            int tag = (in.get() & 0xff);
+            switch (tag) {
+                case NIL: return null;
+                case TRUE: return true;
+                case FALSE: return false;
+                case NUMBER: return in.getDouble();
+                case INTEGER: return (double) readInt();
+                case STRING: return string();
+                default: throw new IllegalStateException("Bad literal tag " + tag);
+            }
+        }
+
+        private Token token() {
+            TokenType type = TYPES[(in.get() & 0xff)];
+            String lexeme = TokenBuffer.fixedLexeme(type);
+            if (lexeme == null) lexeme = string();
+
+            return new Token(type, lexeme, null, line());
+        }
+
+        private int line() {
+            int delta = readInt();
+            line += (delta >>> 1) ^ -(delta & 1);
+            return line;
+        }
+
+        private String string() {
+            int index = readInt();
+            if (index == strings.size()) {
+                byte[] bytes = new byte[readInt()];
+                in.get(bytes);
+                strings.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            return strings.get(index);
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = (in.get() & 0xff);
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+        }
+    }
+}
@@ -1,13 +1,57 @@
 package com.craftinginterpreters.lox;
 
-class AstPrinter implements Expr.Visitor<String> {
+import java.util.List;
+
+class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
     String print(Expr expr) {
         return expr.accept(this);
     }
 
+    String print(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    // One statement per line
+    String print(List<Stmt> statements) {
+        StringBuilder builder = new StringBuilder();
+        for (Stmt statement : statements) {
+            builder.append(print(statement)).append("\n");
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("(block");
+        for (Stmt statement : stmt.statements) {
+            builder.append(" ").append(statement.accept(this));
+        }
+        builder.append(")");
+        return builder.toString();
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) {
+            return "(var " + stmt.name.lexeme + ")";
+        }
+        return parenthesize("var " + stmt.name.lexeme + " =", stmt.initializer);
+    }
+
     @Override
     public String visitAssignExpr(Expr.Assign expr) {
-        return expr.name.lexeme + " = " + expr.accept(this);
+        return parenthesize("= " + expr.name.lexeme, expr.value);
     }
 
     @Override
@@ -15,17 +59,52 @@ class AstPrinter implements Expr.Visitor<String> {
         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
     }
 
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        return parenthesize("call", prepend(expr.callee, expr.arguments));
+    }
+
     @Override
     public String visitGroupingExpr(Expr.Grouping expr) {
         return parenthesize("group", expr.expression);
     }
 
+    @Override
+    public String visitArrayExpr(Expr.Array expr) {
+        return parenthesize("array", expr.elements.toArray(new Expr[0]));
+    }
+
+    @Override
+    public String visitMapExpr(Expr.Map expr) {
+        Expr[] entries = new Expr[expr.keys.size() * 2];
+        for (int i = 0; i < expr.keys.size(); i++) {
+            entries[i * 2] = expr.keys.get(i);
+            entries[i * 2 + 1] = expr.values.get(i);
+        }
+        return parenthesize("map", entries);
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return parenthesize("[]", expr.object, expr.index);
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) {
+        return parenthesize("[]=", expr.object, expr.index, expr.value);
+    }
+
     @Override
     public String visitLiteralExpr(Expr.Literal expr) {
         if (expr.value == null) return "nil";
         return expr.value.toString();
     }
 
+    @Override
+    public String visitSpawnExpr(Expr.Spawn expr) {
+        return "(spawn " + visitBlockStmt(expr.body) + ")";
+    }
+
     @Override
     public String visitUnaryExpr(Expr.Unary expr) {
         return parenthesize(expr.operator.lexeme, expr.right);
@@ -45,6 +124,13 @@ class AstPrinter implements Expr.Visitor<String> {
         builder.append(")");
         return builder.toString();
     }
+
+    private Expr[] prepend(Expr first, List<Expr> rest) {
+        Expr[] expressions = new Expr[rest.size() + 1];
+        expressions[0] = first;
+        for (int i = 0; i < rest.size(); i++) expressions[i + 1] = rest.get(i);
+        return expressions;
+    }
 }
 
 class ReversePolishNotationPrinter implements Expr.Visitor<String> {
@@ -54,7 +140,7 @@ class ReversePolishNotationPrinter implements Expr.Visitor<String> {
 
     @Override
     public String visitAssignExpr(Expr.Assign expr) {
-        return expr.name.lexeme + " = " + expr.accept(this);
+        return expr.name.lexeme + " = " + expr.value.accept(this);
     }
 
     @Override
@@ -62,11 +148,53 @@ class ReversePolishNotationPrinter implements Expr.Visitor<String> {
         return expr.left.accept(this) + expr.right.accept(this) + expr.operator.lexeme + " ";
     }
 
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        StringBuilder builder = new StringBuilder();
+        for (Expr argument : expr.arguments) {
+            builder.append(argument.accept(this));
+        }
+        return builder.append(expr.callee.accept(this)).append(" call ").toString();
+    }
+
     @Override
     public String visitGroupingExpr(Expr.Grouping expr) {
         return expr.expression.accept(this) + " ";
     }
 
+    @Override
+    public String visitSpawnExpr(Expr.Spawn expr) {
+        return "spawn ";
+    }
+
+    @Override
+    public String visitArrayExpr(Expr.Array expr) {
+        StringBuilder builder = new StringBuilder();
+        for (Expr element : expr.elements) {
+            builder.append(element.accept(this));
+        }
+        return builder.append(expr.elements.size()).append(" array ").toString();
+    }
+
+    @Override
+    public String visitMapExpr(Expr.Map expr) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < expr.keys.size(); i++) {
+            builder.append(expr.keys.get(i).accept(this)).append(expr.values.get(i).accept(this));
+        }
+        return builder.append(expr.keys.size()).append(" map ").toString();
+    }
+
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return expr.object.accept(this) + expr.index.accept(this) + "[] ";
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) {
+        return expr.object.accept(this) + expr.index.accept(this) + expr.value.accept(this) + "[]= ";
+    }
+
     @Override
     public String visitLiteralExpr(Expr.Literal expr) {
         if (expr.value == null) return "nil" + " ";
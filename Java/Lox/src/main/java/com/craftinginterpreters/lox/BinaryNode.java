@@ -0,0 +1,318 @@
+package com.craftinginterpreters.lox;
+
+// Binary operators rewrite themselves based on the values they see.
+// A new node starts as Uninitialized, on its first execution it looks at the operand types and
+// replaces itself with a node that only handles that case (number add, string concat, number compare...).
+// If a specialized node later sees other types its guard fails and it turns into the Generic node for good.
+//
+// The number nodes pull their operands through executeDouble, so a chain of arithmetic never boxes
+// the intermediate results, only the final value is boxed if the consumer needs an Object.
+abstract class BinaryNode extends ExprNode {
+    protected ExprNode left;
+    protected ExprNode right;
+    protected final Token operator;
+
+    BinaryNode(ExprNode left, Token operator, ExprNode right) {
+        this.left = adopt(left);
+        this.operator = operator;
+        this.right = adopt(right);
+    }
+
+    @Override
+    void replaceChild(Node oldChild, Node newChild) {
+        if (left == oldChild) left = (ExprNode) newChild;
+        if (right == oldChild) right = (ExprNode) newChild;
+    }
+
+    // Slow path once both operands are evaluated, same semantics as the Interpreter
+    Object executeGeneric(Object leftValue, Object rightValue) {
+        return Interpreter.binary(operator, leftValue, rightValue);
+    }
+
+    // Called when a guard fails, the operands were already evaluated so we finish with them
+    Object generalize(Object leftValue, Object rightValue) {
+        return replace(new Generic(left, operator, right)).executeGeneric(leftValue, rightValue);
+    }
+
+    // Operands for the number nodes. When an operand is not a number we finish the operation on
+    // the generic path and hand its result up with the exception, the caller decides what to do with it.
+    double leftDouble(Environment frame) throws UnexpectedResultException {
+        try {
+            return left.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            Object rightValue = right.execute(frame);
+            throw new UnexpectedResultException(generalize(e.result, rightValue));
+        }
+    }
+
+    double rightDouble(Environment frame, double leftValue) throws UnexpectedResultException {
+        try {
+            return right.executeDouble(frame);
+        } catch (UnexpectedResultException e) {
+            throw new UnexpectedResultException(generalize(leftValue, e.result));
+        }
+    }
+
+    static class Uninitialized extends BinaryNode {
+        Uninitialized(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return replace(specialize(leftValue, rightValue)).executeGeneric(leftValue, rightValue);
+        }
+
+        private BinaryNode specialize(Object leftValue, Object rightValue) {
+            boolean numbers = leftValue instanceof Double && rightValue instanceof Double;
+
+            switch (operator.type) {
+                case EQUAL_EQUAL: return new Equal(left, operator, right);
+                case BANG_EQUAL: return new NotEqual(left, operator, right);
+                case PLUS:
+                    if (numbers) return new NumberAdd(left, operator, right);
+                    if (leftValue instanceof CharSequence && rightValue instanceof CharSequence) {
+                        return new StringConcat(left, operator, right);
+                    }
+                    break;
+                case MINUS:
+                    if (numbers) return new NumberSubtract(left, operator, right);
+                    break;
+                case STAR:
+                    if (numbers) return new NumberMultiply(left, operator, right);
+                    break;
+                case SLASH:
+                    if (numbers) return new NumberDivide(left, operator, right);
+                    break;
+                case LESS:
+                    if (numbers) return new NumberLess(left, operator, right);
+                    break;
+                case LESS_EQUAL:
+                    if (numbers) return new NumberLessEqual(left, operator, right);
+                    break;
+                case GREATER:
+                    if (numbers) return new NumberGreater(left, operator, right);
+                    break;
+                case GREATER_EQUAL:
+                    if (numbers) return new NumberGreaterEqual(left, operator, right);
+                    break;
+            }
+
+            return new Generic(left, operator, right);
+        }
+    }
+
+    static class Generic extends BinaryNode {
+        Generic(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return executeGeneric(leftValue, rightValue);
+        }
+    }
+
+    static class Equal extends BinaryNode {
+        Equal(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            return Interpreter.isEqual(leftValue, right.execute(frame));
+        }
+    }
+
+    static class NotEqual extends BinaryNode {
+        NotEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            return !Interpreter.isEqual(leftValue, right.execute(frame));
+        }
+    }
+
+    static class StringConcat extends BinaryNode {
+        StringConcat(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            if (leftValue instanceof CharSequence && rightValue instanceof CharSequence) {
+                return Rope.concat((CharSequence) leftValue, (CharSequence) rightValue);
+            }
+            return generalize(leftValue, rightValue);
+        }
+    }
+
+    static class NumberAdd extends BinaryNode {
+        NumberAdd(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            double leftValue = leftDouble(frame);
+            double rightValue = rightDouble(frame, leftValue);
+            return leftValue + rightValue;
+        }
+    }
+
+    static class NumberSubtract extends BinaryNode {
+        NumberSubtract(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            double leftValue = leftDouble(frame);
+            double rightValue = rightDouble(frame, leftValue);
+            return leftValue - rightValue;
+        }
+    }
+
+    static class NumberMultiply extends BinaryNode {
+        NumberMultiply(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            double leftValue = leftDouble(frame);
+            double rightValue = rightDouble(frame, leftValue);
+            return leftValue * rightValue;
+        }
+    }
+
+    static class NumberDivide extends BinaryNode {
+        NumberDivide(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                return executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            double leftValue = leftDouble(frame);
+            double rightValue = rightDouble(frame, leftValue);
+            if (rightValue == 0) {
+                throw new RuntimeError(operator, "Cannot divide by Zero");
+            }
+            return leftValue / rightValue;
+        }
+    }
+
+    static class NumberLess extends BinaryNode {
+        NumberLess(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                double leftValue = leftDouble(frame);
+                double rightValue = rightDouble(frame, leftValue);
+                return leftValue < rightValue;
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+    }
+
+    static class NumberLessEqual extends BinaryNode {
+        NumberLessEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                double leftValue = leftDouble(frame);
+                double rightValue = rightDouble(frame, leftValue);
+                return leftValue <= rightValue;
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+    }
+
+    static class NumberGreater extends BinaryNode {
+        NumberGreater(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                double leftValue = leftDouble(frame);
+                double rightValue = rightDouble(frame, leftValue);
+                return leftValue > rightValue;
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+    }
+
+    static class NumberGreaterEqual extends BinaryNode {
+        NumberGreaterEqual(ExprNode left, Token operator, ExprNode right) {
+            super(left, operator, right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            try {
+                double leftValue = leftDouble(frame);
+                double rightValue = rightDouble(frame, leftValue);
+                return leftValue >= rightValue;
+            } catch (UnexpectedResultException e) {
+                return e.result;
+            }
+        }
+    }
+}
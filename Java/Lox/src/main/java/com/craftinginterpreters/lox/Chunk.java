@@ -0,0 +1,29 @@
+package com.craftinginterpreters.lox;
+
+// A compiled program: the bytecode, the constants it refers to and a table to map code back to lines.
+class Chunk {
+    final byte[] code;
+    final Object[] constants;
+
+    // Run length encoded line table, pairs of (first offset, line), only read when reporting errors
+    private final int[] lines;
+
+    // Deepest the value stack gets while running this chunk, so the VM allocates it once
+    final int maxStack;
+
+    Chunk(byte[] code, Object[] constants, int[] lines, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.lines = lines;
+        this.maxStack = maxStack;
+    }
+
+    int getLine(int offset) {
+        int line = 0;
+        for (int i = 0; i < lines.length; i += 2) {
+            if (lines[i] > offset) break;
+            line = lines[i + 1];
+        }
+        return line;
+    }
+}
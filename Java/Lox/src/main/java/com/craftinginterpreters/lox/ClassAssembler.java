@@ -0,0 +1,421 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of a class file writer for the JvmCompiler: one class with static methods and no fields.
+//
+// The classes are written as version 49 (Java 5) so they don't need a StackMapTable, the JVM works
+// the types out itself when it verifies them. That keeps the assembler small, the methods only
+// need to keep track of how deep the operand stack gets.
+class ClassAssembler {
+    private static final int VERSION = 49;
+
+    // Constant pool tags
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD = 9;
+    private static final int METHOD = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    static final int MAX_CONSTANTS = 0xffff;
+    private static final int MAX_CODE = 0xffff;
+
+    // Thrown when the program doesn't fit the limits of a class file
+    static class LimitExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LimitExceeded(String message) {
+            super(message);
+        }
+    }
+
+    private final String name;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+
+    private final List<Method> methods = new ArrayList<>();
+
+    ClassAssembler(String name) {
+        this.name = name;
+    }
+
+    Method method(int access, String name, String descriptor) {
+        Method method = new Method(access, name, descriptor);
+        methods.add(method);
+        return method;
+    }
+
+    // The constant pool is full, or close to it
+    boolean isFull() {
+        return constantCount > MAX_CONSTANTS - 64;
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classConstant(name);
+        int superClass = classConstant("java/lang/Object");
+        int code = utf8("Code");
+        for (Method method : methods) {
+            method.nameIndex = utf8(method.name);
+            method.descriptorIndex = utf8(method.descriptor);
+        }
+        if (constantCount > MAX_CONSTANTS) throw new LimitExceeded("Too many constants.");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(constantCount);
+            pool.writeTo(out);
+
+            // ACC_FINAL | ACC_SUPER
+            out.writeShort(0x0030);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+            out.writeShort(0); // fields
+
+            out.writeShort(methods.size());
+            for (Method method : methods) {
+                if (method.size > MAX_CODE || method.maxLocals > 0xffff) throw new LimitExceeded("Method too large.");
+                out.writeShort(method.access);
+                out.writeShort(method.nameIndex);
+                out.writeShort(method.descriptorIndex);
+                out.writeShort(1);
+
+                out.writeShort(code);
+                out.writeInt(12 + method.size);
+                out.writeShort(method.maxStack);
+                out.writeShort(method.maxLocals);
+                out.writeInt(method.size);
+                out.write(method.code, 0, method.size);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // attributes
+            }
+
+            out.writeShort(0); // class attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Constant pool
+
+    private int utf8(String value) {
+        return constant("U" + value, UTF8, () -> poolOut.writeUTF(value), 1);
+    }
+
+    int classConstant(String internalName) {
+        int utf8 = utf8(internalName);
+        return constant("C" + internalName, CLASS, () -> poolOut.writeShort(utf8), 1);
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, DOUBLE, () -> poolOut.writeLong(bits), 2);
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, INTEGER, () -> poolOut.writeInt(value), 1);
+    }
+
+    int stringConstant(String value) {
+        int utf8 = utf8(value);
+        return constant("S" + value, STRING, () -> poolOut.writeShort(utf8), 1);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, NAME_AND_TYPE, () -> {
+            poolOut.writeShort(nameIndex);
+            poolOut.writeShort(descriptorIndex);
+        }, 1);
+        return constant(tag + owner + "." + name + ":" + descriptor, tag, () -> {
+            poolOut.writeShort(ownerIndex);
+            poolOut.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private interface Entry {
+        void write() throws IOException;
+    }
+
+    private int constant(String key, int tag, Entry entry, int slots) {
+        Integer index = constants.get(key);
+        if (index != null) return index;
+
+        index = constantCount;
+        try {
+            poolOut.writeByte(tag);
+            entry.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        constants.put(key, index);
+        constantCount += slots;
+        return index;
+    }
+
+    // Stack slots taken by a value of the type
+    private static int slots(char type) {
+        switch (type) {
+            case 'V': return 0;
+            case 'D':
+            case 'J': return 2;
+            default: return 1;
+        }
+    }
+
+    static class Label {
+        private int position = -1;
+        private int depth = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    class Method {
+        private final int access;
+        private final String name;
+        private final String descriptor;
+        private int nameIndex;
+        private int descriptorIndex;
+
+        private byte[] code = new byte[256];
+        private int size = 0;
+        private int depth = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+
+        private Method(int access, String name, String descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            // Only static methods are written, so there is no this
+            this.maxLocals = argumentSlots(descriptor);
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Throws away the code from the offset on, for compiling a statement again
+        void reset(int offset) {
+            size = offset;
+            depth = 0;
+        }
+
+        // Simple instructions, the caller says how they change the stack depth
+        void op(int opcode, int stackChange) {
+            u1(opcode);
+            stack(stackChange);
+        }
+
+        // aload, astore, dload, dstore, iload, istore
+        void local(int opcode, int index) {
+            if (index > 0xff) {
+                u1(Opcodes.WIDE);
+                u1(opcode);
+                u2(index);
+            } else {
+                u1(opcode);
+                u1(index);
+            }
+
+            boolean wide = opcode == Opcodes.DLOAD || opcode == Opcodes.DSTORE;
+            boolean load = opcode == Opcodes.ALOAD || opcode == Opcodes.DLOAD || opcode == Opcodes.ILOAD;
+            stack((wide ? 2 : 1) * (load ? 1 : -1));
+            maxLocals = Math.max(maxLocals, index + (wide ? 2 : 1));
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                op(Opcodes.ICONST_0 + value, 1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(Opcodes.SIPUSH);
+                u2(value);
+                stack(1);
+            } else {
+                u1(Opcodes.LDC_W);
+                u2(intConstant(value));
+                stack(1);
+            }
+        }
+
+        void pushDouble(double value) {
+            u1(Opcodes.LDC2_W);
+            u2(doubleConstant(value));
+            stack(2);
+        }
+
+        void pushString(String value) {
+            u1(Opcodes.LDC_W);
+            u2(stringConstant(value));
+            stack(1);
+        }
+
+        // checkcast, instanceof
+        void type(int opcode, String internalName) {
+            u1(opcode);
+            u2(classConstant(internalName));
+        }
+
+        void getStatic(String owner, String name, String descriptor) {
+            u1(Opcodes.GETSTATIC);
+            u2(memberConstant(FIELD, owner, name, descriptor));
+            stack(slots(descriptor.charAt(0)));
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            u1(opcode);
+            u2(memberConstant(METHOD, owner, name, descriptor));
+
+            int change = -argumentSlots(descriptor) + slots(descriptor.charAt(descriptor.indexOf(')') + 1));
+            if (opcode != Opcodes.INVOKESTATIC) change--;
+            stack(change);
+        }
+
+        void jump(int opcode, Label label) {
+            int at = size;
+            u1(opcode);
+            u2(0);
+
+            switch (opcode) {
+                case Opcodes.GOTO: break;
+                case Opcodes.IF_ICMPEQ:
+                case Opcodes.IF_ICMPNE:
+                case Opcodes.IF_ACMPEQ:
+                case Opcodes.IF_ACMPNE:
+                    stack(-2);
+                    break;
+                default:
+                    stack(-1);
+            }
+
+            if (label.depth < 0) label.depth = depth;
+            if (label.position >= 0) {
+                patch(at, label.position);
+            } else {
+                label.jumps.add(at);
+            }
+        }
+
+        // Code after a goto or athrow is only reached through jumps, so it starts at their depth
+        void bind(Label label) {
+            label.position = size;
+            if (label.depth >= 0) depth = label.depth;
+            label.depth = depth;
+            for (int at : label.jumps) {
+                patch(at, label.position);
+            }
+        }
+
+        private void patch(int at, int target) {
+            int offset = target - at;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new LimitExceeded("Jump too far.");
+            }
+            code[at + 1] = (byte) (offset >> 8);
+            code[at + 2] = (byte) offset;
+        }
+
+        private void stack(int change) {
+            depth += change;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private void u1(int b) {
+            if (size == code.length) code = Arrays.copyOf(code, size * 2);
+            code[size++] = (byte) b;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+    }
+
+    // Stack slots taken by the arguments of a method descriptor
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            char c = descriptor.charAt(i);
+            slots += slots(c);
+            while (descriptor.charAt(i) == '[') i++;
+            if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+        }
+        return slots;
+    }
+
+    // The opcodes the JvmCompiler uses
+    static class Opcodes {
+        static final int ACC_PUBLIC = 0x0001;
+        static final int ACC_PRIVATE = 0x0002;
+        static final int ACC_STATIC = 0x0008;
+
+        static final int ACONST_NULL = 0x01;
+        static final int ICONST_0 = 0x03;
+        static final int ICONST_1 = 0x04;
+        static final int DCONST_0 = 0x0e;
+        static final int SIPUSH = 0x11;
+        static final int LDC_W = 0x13;
+        static final int LDC2_W = 0x14;
+        static final int ILOAD = 0x15;
+        static final int DLOAD = 0x18;
+        static final int ALOAD = 0x19;
+        static final int AALOAD = 0x32;
+        static final int AASTORE = 0x53;
+        static final int ISTORE = 0x36;
+        static final int DSTORE = 0x39;
+        static final int ASTORE = 0x3a;
+        static final int POP = 0x57;
+        static final int POP2 = 0x58;
+        static final int DUP = 0x59;
+        static final int DUP2 = 0x5c;
+        static final int DADD = 0x63;
+        static final int DSUB = 0x67;
+        static final int DMUL = 0x6b;
+        static final int DDIV = 0x6f;
+        static final int DNEG = 0x77;
+        static final int IXOR = 0x82;
+        static final int LCMP = 0x94;
+        static final int DCMPL = 0x97;
+        static final int DCMPG = 0x98;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IFGT = 0x9d;
+        static final int IFLE = 0x9e;
+        static final int IF_ICMPEQ = 0x9f;
+        static final int IF_ICMPNE = 0xa0;
+        static final int IF_ACMPEQ = 0xa5;
+        static final int IF_ACMPNE = 0xa6;
+        static final int GOTO = 0xa7;
+        static final int RETURN = 0xb1;
+        static final int GETSTATIC = 0xb2;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESTATIC = 0xb8;
+        static final int ANEWARRAY = 0xbd;
+        static final int ATHROW = 0xbf;
+        static final int CHECKCAST = 0xc0;
+        static final int INSTANCEOF = 0xc1;
+        static final int WIDE = 0xc4;
+    }
+}
@@ -0,0 +1,311 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Turns the resolved Expr/Stmt tree into a tree of small lambdas, used by --engine=closures.
+// Everything the visitor interpreter looks up on each run (which operator, which literal,
+// global or local and at which slot) is decided here once, so running a closure is just calling
+// its children. Errors and anything unusual are handed back to the Interpreter's static methods,
+// so the semantics stay exactly the same.
+class ClosureCompiler implements Expr.Visitor<ClosureCompiler.Evaluator>, Stmt.Visitor<ClosureCompiler.Executor> {
+    interface Evaluator {
+        Object evaluate(Environment environment);
+    }
+
+    interface Executor {
+        void execute(Environment environment);
+    }
+
+    private final Environment globals;
+    private final OutputSink out;
+    private final Tasks tasks;
+
+    ClosureCompiler(Environment globals, OutputSink out, Tasks tasks) {
+        this.globals = globals;
+        this.out = out;
+        this.tasks = tasks;
+    }
+
+    List<Executor> compile(List<Stmt> statements) {
+        List<Executor> executors = new ArrayList<>();
+        for (Stmt statement : statements) {
+            executors.add(statement.accept(this));
+        }
+        return executors;
+    }
+
+    private Evaluator compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Executor visitBlockStmt(Stmt.Block stmt) {
+        Executor[] body = compile(stmt.statements).toArray(new Executor[0]);
+        int slots = stmt.slots;
+        return environment -> {
+            Environment inner = new Environment(environment, slots);
+            for (Executor executor : body) {
+                executor.execute(inner);
+            }
+        };
+    }
+
+    @Override
+    public Executor visitExpressionStmt(Stmt.Expression stmt) {
+        Evaluator expression = compile(stmt.expression);
+        return expression::evaluate;
+    }
+
+    @Override
+    public Executor visitPrintStmt(Stmt.Print stmt) {
+        Evaluator expression = compile(stmt.expression);
+        return environment -> out.println(expression.evaluate(environment));
+    }
+
+    @Override
+    public Executor visitVarStmt(Stmt.Var stmt) {
+        Evaluator initializer = stmt.initializer == null
+                ? environment -> Interpreter.uninitialized
+                : compile(stmt.initializer);
+        Token name = stmt.name;
+        int slot = stmt.slot;
+
+        if (slot < 0) return environment -> globals.define(name, initializer.evaluate(environment));
+        return environment -> environment.defineAt(slot, initializer.evaluate(environment));
+    }
+
+    @Override
+    public Evaluator visitAssignExpr(Expr.Assign expr) {
+        Evaluator value = compile(expr.value);
+        Token name = expr.name;
+        int depth = expr.depth;
+        int slot = expr.slot;
+
+        if (depth < 0) {
+            return environment -> {
+                Object result = value.evaluate(environment);
+                globals.assign(name, result);
+                return result;
+            };
+        }
+
+        return environment -> {
+            Object result = value.evaluate(environment);
+            environment.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    // Each operator gets its own closure with the fast path for the expected operand types inlined.
+    // Anything else goes through Interpreter.binary, which throws the same error the interpreter would.
+    @Override
+    public Evaluator visitBinaryExpr(Expr.Binary expr) {
+        Evaluator left = compile(expr.left);
+        Evaluator right = compile(expr.right);
+        Token operator = expr.operator;
+
+        switch (operator.type) {
+            case PLUS:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a + (double) b;
+                    if (a instanceof CharSequence && b instanceof CharSequence) {
+                        return Rope.concat((CharSequence) a, (CharSequence) b);
+                    }
+                    return Interpreter.binary(operator, a, b);
+                };
+            case MINUS:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a - (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case STAR:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a * (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case SLASH:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double && (double) b != 0) return (double) a / (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case GREATER:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a > (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case GREATER_EQUAL:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a >= (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case LESS:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a < (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case LESS_EQUAL:
+                return environment -> {
+                    Object a = left.evaluate(environment);
+                    Object b = right.evaluate(environment);
+                    if (a instanceof Double && b instanceof Double) return (double) a <= (double) b;
+                    return Interpreter.binary(operator, a, b);
+                };
+            case EQUAL_EQUAL:
+                return environment -> Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+            case BANG_EQUAL:
+                return environment -> !Interpreter.isEqual(left.evaluate(environment), right.evaluate(environment));
+        }
+
+        // Unreachable.
+        return environment -> Interpreter.binary(operator, left.evaluate(environment), right.evaluate(environment));
+    }
+
+    @Override
+    public Evaluator visitCallExpr(Expr.Call expr) {
+        Evaluator callee = compile(expr.callee);
+        Evaluator[] arguments = new Evaluator[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+        Token paren = expr.paren;
+
+        return environment -> {
+            Object function = callee.evaluate(environment);
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].evaluate(environment);
+            }
+            return Interpreter.call(function, values, paren);
+        };
+    }
+
+    @Override
+    public Evaluator visitSpawnExpr(Expr.Spawn expr) {
+        Executor body = visitBlockStmt(expr.body);
+        return environment -> tasks.spawn(() -> body.execute(environment));
+    }
+
+    @Override
+    public Evaluator visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Evaluator visitArrayExpr(Expr.Array expr) {
+        Evaluator[] elements = new Evaluator[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = compile(expr.elements.get(i));
+        }
+
+        return environment -> {
+            LoxArray array = new LoxArray(elements.length);
+            for (Evaluator element : elements) {
+                array.push(element.evaluate(environment));
+            }
+            return array;
+        };
+    }
+
+    @Override
+    public Evaluator visitMapExpr(Expr.Map expr) {
+        Evaluator[] keys = new Evaluator[expr.keys.size()];
+        Evaluator[] values = new Evaluator[expr.values.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = compile(expr.keys.get(i));
+            values[i] = compile(expr.values.get(i));
+        }
+
+        return environment -> {
+            LoxMap map = new LoxMap(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                Object key = keys[i].evaluate(environment);
+                map.put(key, values[i].evaluate(environment));
+            }
+            return map;
+        };
+    }
+
+    @Override
+    public Evaluator visitIndexExpr(Expr.Index expr) {
+        Evaluator object = compile(expr.object);
+        Evaluator index = compile(expr.index);
+        Token bracket = expr.bracket;
+        return environment -> {
+            Object array = object.evaluate(environment);
+            return Interpreter.index(bracket, array, index.evaluate(environment));
+        };
+    }
+
+    @Override
+    public Evaluator visitSetIndexExpr(Expr.SetIndex expr) {
+        Evaluator object = compile(expr.object);
+        Evaluator index = compile(expr.index);
+        Evaluator value = compile(expr.value);
+        Token bracket = expr.bracket;
+        return environment -> {
+            Object array = object.evaluate(environment);
+            Object at = index.evaluate(environment);
+            return Interpreter.setIndex(bracket, array, at, value.evaluate(environment));
+        };
+    }
+
+    @Override
+    public Evaluator visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return environment -> value;
+    }
+
+    @Override
+    public Evaluator visitUnaryExpr(Expr.Unary expr) {
+        Evaluator right = compile(expr.right);
+        Token operator = expr.operator;
+
+        switch (operator.type) {
+            case MINUS:
+                return environment -> {
+                    Object value = right.evaluate(environment);
+                    if (value instanceof Double) return -(double) value;
+                    return Interpreter.unary(operator, value);
+                };
+            case BANG:
+                return environment -> !Interpreter.isTruthy(right.evaluate(environment));
+        }
+
+        // Unreachable.
+        return environment -> Interpreter.unary(operator, right.evaluate(environment));
+    }
+
+    @Override
+    public Evaluator visitVariableExpr(Expr.Variable expr) {
+        Token name = expr.name;
+        int depth = expr.depth;
+        int slot = expr.slot;
+
+        if (depth < 0) {
+            return environment -> checkInitialized(name, globals.get(name));
+        }
+        return environment -> checkInitialized(name, environment.getAt(depth, slot));
+    }
+
+    private static Object checkInitialized(Token name, Object value) {
+        if (value == Interpreter.uninitialized) {
+            throw new RuntimeError(name, "Variable must be initialized before use.");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// Runs programs as the tree of closures built by the ClosureCompiler, selected with --engine=closures.
+// The statements have to go through the Resolver first.
+class ClosureInterpreter {
+    final Environment globals = new Environment();
+    private final OutputSink out;
+    private final ErrorReporter reporter;
+    private final Tasks tasks;
+
+    ClosureInterpreter() {
+        this(new OutputSink(System.out), new ErrorReporter(System.err));
+    }
+
+    ClosureInterpreter(OutputSink out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+        this.tasks = new Tasks(reporter);
+        Natives.define(globals);
+    }
+
+    void interpret(List<Stmt> statements) {
+        execute(prepare(statements));
+    }
+
+    // Compiling and running are split so a program can be run more than once
+    List<ClosureCompiler.Executor> prepare(List<Stmt> statements) {
+        return new ClosureCompiler(globals, out, tasks).compile(statements);
+    }
+
+    void execute(List<ClosureCompiler.Executor> executors) {
+        try {
+            for (ClosureCompiler.Executor executor : executors) {
+                executor.execute(globals);
+            }
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+
+    // Spawned tasks keep running after interpret() returns, a program is only done once they are
+    void awaitTasks() {
+        tasks.awaitAll();
+    }
+}
@@ -0,0 +1,322 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns the statements from the Parser into a Chunk for the VM.
+// Locals live directly on the VM stack, so the compiler keeps track of which slot each one is in,
+// globals are looked up by name at runtime the same way the Interpreter does it.
+class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_OPERAND = 0xffff;
+
+    private static class Local {
+        final String name;
+        final int depth;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private byte[] code = new byte[256];
+    private int count = 0;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    private int[] lines = new int[16];
+    private int lineCount = 0;
+    private int currentLine = 1;
+
+    private final List<Local> locals = new ArrayList<>();
+    private int scopeDepth = 0;
+
+    private final ErrorReporter reporter;
+
+    // Tracks the stack height while emitting so we know the maximum the VM needs
+    private int stackHeight = 0;
+    private int maxStack = 0;
+
+    Compiler(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    Chunk compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        emit(OpCode.RETURN, 0);
+
+        return new Chunk(Arrays.copyOf(code, count), constants.toArray(),
+                Arrays.copyOf(lines, lineCount), maxStack);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopeDepth++;
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        scopeDepth--;
+
+        // Drop the locals of the block from the stack
+        int popped = 0;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > scopeDepth) {
+            locals.remove(locals.size() - 1);
+            popped++;
+        }
+        if (popped == 1) {
+            emit(OpCode.POP, -1);
+        } else if (popped > 1) {
+            emitWithOperand(OpCode.POP_N, popped, -popped);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        emit(OpCode.POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        emit(OpCode.PRINT, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        currentLine = stmt.name.line;
+        if (stmt.initializer != null) {
+            stmt.initializer.accept(this);
+        } else {
+            emit(OpCode.UNINITIALIZED, 1);
+        }
+
+        if (scopeDepth == 0) {
+            emitWithOperand(OpCode.DEFINE_GLOBAL, makeConstant(stmt.name, stmt.name.lexeme), -1);
+            return null;
+        }
+
+        // Declaring the same name again in a block overwrites the existing slot
+        for (int i = locals.size() - 1; i >= 0 && locals.get(i).depth == scopeDepth; i--) {
+            if (locals.get(i).name.equals(stmt.name.lexeme)) {
+                emitWithOperand(OpCode.SET_LOCAL, i, 0);
+                emit(OpCode.POP, -1);
+                return null;
+            }
+        }
+
+        if (locals.size() > MAX_OPERAND) {
+            reporter.error(stmt.name, "Too many local variables.");
+            return null;
+        }
+
+        // The value left on the stack by the initializer becomes the local
+        locals.add(new Local(stmt.name.lexeme, scopeDepth));
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        expr.value.accept(this);
+        currentLine = expr.name.line;
+
+        int slot = resolveLocal(expr.name);
+        if (slot >= 0) {
+            emitWithOperand(OpCode.SET_LOCAL, slot, 0);
+        } else {
+            emitWithOperand(OpCode.SET_GLOBAL, makeConstant(expr.name, expr.name.lexeme), 0);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        currentLine = expr.operator.line;
+
+        switch (expr.operator.type) {
+            case GREATER: emit(OpCode.GREATER, -1); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL, -1); break;
+            case LESS: emit(OpCode.LESS, -1); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL, -1); break;
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL, -1); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL, -1); break;
+            case MINUS: emit(OpCode.SUBTRACT, -1); break;
+            case PLUS: emit(OpCode.ADD, -1); break;
+            case SLASH: emit(OpCode.DIVIDE, -1); break;
+            case STAR: emit(OpCode.MULTIPLY, -1); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        expr.callee.accept(this);
+        for (Expr argument : expr.arguments) {
+            argument.accept(this);
+        }
+        currentLine = expr.paren.line;
+
+        // The paren token goes into the constants so the natives can report errors on it
+        int paren = makeConstant(expr.paren, expr.paren);
+        emitWithOperand(OpCode.CALL, expr.arguments.size(), -expr.arguments.size());
+        writeByte((byte) (paren >> 8));
+        writeByte((byte) paren);
+        return null;
+    }
+
+    // Locals live on the VM's stack, a task running on another thread couldn't share them
+    @Override
+    public Void visitSpawnExpr(Expr.Spawn expr) {
+        reporter.error(expr.keyword, "The vm engine doesn't support spawn.");
+        emit(OpCode.NIL, 1);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+        for (Expr element : expr.elements) {
+            element.accept(this);
+        }
+        currentLine = expr.bracket.line;
+        if (expr.elements.size() > MAX_OPERAND) reporter.error(expr.bracket, "Too many elements in one array.");
+        emitWithOperand(OpCode.ARRAY, expr.elements.size(), 1 - expr.elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visitMapExpr(Expr.Map expr) {
+        for (int i = 0; i < expr.keys.size(); i++) {
+            expr.keys.get(i).accept(this);
+            expr.values.get(i).accept(this);
+        }
+        currentLine = expr.brace.line;
+        if (expr.keys.size() > MAX_OPERAND) reporter.error(expr.brace, "Too many entries in one map.");
+        emitWithOperand(OpCode.MAP, expr.keys.size(), 1 - expr.keys.size() * 2);
+        return null;
+    }
+
+    // Like the paren of a call, the bracket goes into the constants for the errors
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        currentLine = expr.bracket.line;
+        emitWithOperand(OpCode.GET_INDEX, makeConstant(expr.bracket, expr.bracket), -1);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        expr.object.accept(this);
+        expr.index.accept(this);
+        expr.value.accept(this);
+        currentLine = expr.bracket.line;
+        emitWithOperand(OpCode.SET_INDEX, makeConstant(expr.bracket, expr.bracket), -2);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(OpCode.NIL, 1);
+        } else if (expr.value.equals(true)) {
+            emit(OpCode.TRUE, 1);
+        } else if (expr.value.equals(false)) {
+            emit(OpCode.FALSE, 1);
+        } else {
+            emitWithOperand(OpCode.CONSTANT, makeConstant(null, expr.value), 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+        currentLine = expr.operator.line;
+
+        switch (expr.operator.type) {
+            case MINUS: emit(OpCode.NEGATE, 0); break;
+            case BANG: emit(OpCode.NOT, 0); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        currentLine = expr.name.line;
+
+        int slot = resolveLocal(expr.name);
+        if (slot >= 0) {
+            emitWithOperand(OpCode.GET_LOCAL, slot, 1);
+        } else {
+            emitWithOperand(OpCode.GET_GLOBAL, makeConstant(expr.name, expr.name.lexeme), 1);
+        }
+        return null;
+    }
+
+    private int resolveLocal(Token name) {
+        for (int i = locals.size() - 1; i >= 0; i--) {
+            if (locals.get(i).name.equals(name.lexeme)) return i;
+        }
+        return -1;
+    }
+
+    private int makeConstant(Token token, Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        if (constants.size() > MAX_OPERAND) {
+            if (token != null) reporter.error(token, "Too many constants in one chunk.");
+            else reporter.error(currentLine, "Too many constants in one chunk.");
+            return 0;
+        }
+
+        constants.add(value);
+        constantIndex.put(value, constants.size() - 1);
+        return constants.size() - 1;
+    }
+
+    // stackEffect is how many values the instruction leaves on the stack minus how many it takes
+    private void emit(byte op, int stackEffect) {
+        writeByte(op);
+
+        stackHeight += stackEffect;
+        if (stackHeight > maxStack) maxStack = stackHeight;
+    }
+
+    private void emitWithOperand(byte op, int operand, int stackEffect) {
+        emit(op, stackEffect);
+        writeByte((byte) (operand >> 8));
+        writeByte((byte) operand);
+    }
+
+    private void writeByte(byte b) {
+        if (count == code.length) code = Arrays.copyOf(code, count * 2);
+
+        // A new line table entry is only needed when the line changes
+        if (lineCount == 0 || lines[lineCount - 1] != currentLine) {
+            if (lineCount == lines.length) lines = Arrays.copyOf(lines, lineCount * 2);
+            lines[lineCount++] = count;
+            lines[lineCount++] = currentLine;
+        }
+
+        code[count++] = b;
+    }
+}
@@ -2,23 +2,48 @@ package com.craftinginterpreters.lox;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 class Environment {
-    Environment enclosing;
+    final Environment enclosing;
+
+    // Globals are stored by name, because the resolver can't see all of them ahead of time (REPL).
+    // Spawned tasks share the globals, so the map is concurrent. It can't hold null, nil is stored as NIL.
+    private final Map<String, Object> values;
+    private static final Object NIL = new Object();
+
+    // Block environments are plain arrays, the resolver gives every local a fixed slot
+    private final Object[] slots;
+
+    // Numbers written by the node engine are kept unboxed in a parallel array,
+    // their slot in the object array then holds the NUMBER marker.
+    // The array is only allocated once a block actually stores a number, except in frames which
+    // spawned tasks share. Two tasks allocating it at once would lose a write, and another task
+    // could see the NUMBER marker before the array.
+    private static final Object NUMBER = new Object();
+    private double[] numbers;
 
     Environment(){
         enclosing = null;
+        values = new ConcurrentHashMap<>();
+        slots = null;
     }
 
-    Environment(Environment enclosing){
-        this.enclosing = enclosing;
+    Environment(Environment enclosing, int size){
+        this(enclosing, size, false);
     }
 
-    private final Map<String, Object> values = new HashMap<>();
+    Environment(Environment enclosing, int size, boolean shared){
+        this.enclosing = enclosing;
+        values = null;
+        slots = new Object[size];
+        if (shared) numbers = new double[size];
+    }
 
     Object get(Token name) {
-        if (values.containsKey((name.lexeme))) {
-            return values.get(name.lexeme);
+        if (values != null) {
+            Object value = values.get(name.lexeme);
+            if (value != null) return value == NIL ? null : value;
         }
 
         if (enclosing != null) return enclosing.get(name);
@@ -27,12 +52,15 @@ class Environment {
     }
 
     void define(Token token, Object value) {
-        values.put(token.lexeme, value);
+        define(token.lexeme, value);
+    }
+
+    void define(String name, Object value) {
+        values.put(name, value == null ? NIL : value);
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        if (values != null && values.replace(name.lexeme, value == null ? NIL : value) != null) {
             return;
         }
 
@@ -44,4 +72,55 @@ class Environment {
         throw new RuntimeError(name,
                 "Undefined variable '" + name.lexeme + "'.");
     }
+
+    // A copy of the globals with nil as null, for Snapshot
+    Map<String, Object> globals() {
+        Map<String, Object> globals = new HashMap<>();
+        for (Map.Entry<String, Object> global : values.entrySet()) {
+            globals.put(global.getKey(), global.getValue() == NIL ? null : global.getValue());
+        }
+        return globals;
+    }
+
+    // Resolved access, no hashing and no string compares
+    Object getAt(int depth, int slot) {
+        Environment environment = ancestor(depth);
+        Object value = environment.slots[slot];
+        if (value == NUMBER) return environment.numbers[slot];
+        return value;
+    }
+
+    void defineAt(int slot, Object value) {
+        slots[slot] = value;
+    }
+
+    void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
+    }
+
+    boolean isNumber(int slot) {
+        return slots[slot] == NUMBER;
+    }
+
+    double getNumber(int slot) {
+        return numbers[slot];
+    }
+
+    void defineNumber(int slot, double value) {
+        if (numbers == null) numbers = new double[slots.length];
+        numbers[slot] = value;
+        slots[slot] = NUMBER;
+    }
+
+    void assignNumberAt(int depth, int slot, double value) {
+        ancestor(depth).defineNumber(slot, value);
+    }
+
+    Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
+        }
+        return environment;
+    }
 }
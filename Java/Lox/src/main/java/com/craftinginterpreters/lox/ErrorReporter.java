@@ -0,0 +1,140 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Collects the errors of one LoxContext and writes them to its error stream.
+// The scanner, parser and engines report here instead of to static state, so contexts don't see each other's errors.
+// Spawned tasks report runtime errors from their own threads, so reporting is synchronized.
+//
+// Syntax and compile errors are only collected while scanning, parsing or compiling, whoever ran
+// that step writes them all out at once with flushDiagnostics(). A generated script with thousands
+// of errors then costs one write instead of one flushed println each.
+class ErrorReporter {
+    // Flush the rendered diagnostics every this many chars, so a flood of errors isn't held as one huge string
+    private static final int RENDER_CHUNK = 64 * 1024;
+
+    // One syntax or compile error. The offset and column are -1 and 0 for errors found in the tree,
+    // which only knows lines
+    static class Diagnostic {
+        final int offset;
+        final int line;
+        // 1-based
+        final int column;
+        // " at 'x'", " at end" or empty
+        final String where;
+        final String message;
+
+        Diagnostic(int offset, int line, int column, String where, String message) {
+            this.offset = offset;
+            this.line = line;
+            this.column = column;
+            this.where = where;
+            this.message = message;
+        }
+
+        void render(StringBuilder text) {
+            text.append("[Line ").append(line);
+            if (column > 0) text.append(':').append(column);
+            text.append("] Error").append(where).append(": ").append(message);
+        }
+    }
+
+    private final PrintStream err;
+    // Printed output is buffered, it is flushed before each error so both streams keep their order
+    private final OutputSink out;
+
+    // This boolean is used to confirm if error occurred while running the program
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+    // Never reset, so a step can tell whether it reported anything itself
+    int errors = 0;
+    // Name of the script the context runs, it goes into the LoxEvents
+    String script = "<string>";
+    // The engine's counters, null when the reporter isn't part of a LoxContext
+    Metrics metrics;
+
+    // Waiting for flushDiagnostics(), guarded by this
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
+
+    ErrorReporter(PrintStream err) {
+        this(err, null);
+    }
+
+    ErrorReporter(PrintStream err, OutputSink out) {
+        this.err = err;
+        this.out = out;
+    }
+
+    // For the scanner, at a position in the source
+    synchronized void error(int offset, int line, int column, String message) {
+        report(new Diagnostic(offset, line, column, "", message));
+    }
+
+    // For the parser, at the token which starts at offset
+    synchronized void error(Token token, int offset, int column, String message) {
+        report(new Diagnostic(offset, token.line, column, where(token), message));
+    }
+
+    // For the compiler, which works on the tree and only knows lines
+    synchronized void error(int line, String message) {
+        report(new Diagnostic(-1, line, 0, "", message));
+    }
+
+    synchronized void error(Token token, String message) {
+        report(new Diagnostic(-1, token.line, 0, where(token), message));
+    }
+
+    private static String where(Token token) {
+        if (token.type == TokenType.EOF) return " at end";
+        return " at '" + token.lexeme + "'";
+    }
+
+    private void report(Diagnostic diagnostic) {
+        diagnostics.add(diagnostic);
+
+        hadError = true;
+        errors++;
+        if (metrics != null) metrics.syntaxErrors.increment();
+    }
+
+    // The collected errors, in the order they were found
+    synchronized List<Diagnostic> diagnostics() {
+        return Collections.unmodifiableList(new ArrayList<>(diagnostics));
+    }
+
+    // Writes out the collected errors in one go, after the output printed before them
+    synchronized void flushDiagnostics() {
+        if (diagnostics.isEmpty()) return;
+        flushOutput();
+
+        StringBuilder text = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics) {
+            diagnostic.render(text);
+            text.append(System.lineSeparator());
+            if (text.length() >= RENDER_CHUNK) {
+                err.print(text);
+                text.setLength(0);
+            }
+        }
+        err.print(text);
+        err.flush();
+        diagnostics.clear();
+    }
+
+    synchronized void runtimeError(RuntimeError error) {
+        LoxEvents.runtimeError(script, error);
+        if (metrics != null) metrics.runtimeError(error.getMessage());
+        flushDiagnostics();
+        flushOutput();
+        err.println(error.getMessage() +
+                "\n[line " + error.line + "]");
+        hadRuntimeError = true;
+    }
+
+    private void flushOutput() {
+        if (out != null) out.flush();
+    }
+}
@@ -4,13 +4,34 @@ import java.util.List;
 
 abstract class Expr {
    interface Visitor<R> {
+   R visitArrayExpr(Array expr);
    R visitAssignExpr(Assign expr);
    R visitBinaryExpr(Binary expr);
+   R visitCallExpr(Call expr);
    R visitGroupingExpr(Grouping expr);
+   R visitIndexExpr(Index expr);
    R visitLiteralExpr(Literal expr);
+   R visitMapExpr(Map expr);
+   R visitSetIndexExpr(SetIndex expr);
+   R visitSpawnExpr(Spawn expr);
    R visitUnaryExpr(Unary expr);
    R visitVariableExpr(Variable expr);
    }
+    static class Array extends Expr {
+    Array(Token bracket, List<Expr> elements) {
+        this.bracket = bracket;
+        this.elements = elements;
+    }
+
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitArrayExpr(this);
+    }
+
+        final Token bracket;
+    final List<Expr> elements;
+  }
     static class Assign extends Expr {
     Assign(Token name, Expr value) {
         this.name = name;
@@ -25,6 +46,10 @@ abstract class Expr {
 
         final Token name;
     final Expr value;
+
+    // Filled in by the Resolver, depth -1 means the variable is a global
+    int depth = -1;
+    int slot = -1;
   }
     static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -42,6 +67,23 @@ abstract class Expr {
         final Expr left;
     final Token operator;
     final Expr right;
+  }
+    static class Call extends Expr {
+    Call(Expr callee, Token paren, List<Expr> arguments) {
+        this.callee = callee;
+        this.paren = paren;
+        this.arguments = arguments;
+    }
+
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitCallExpr(this);
+    }
+
+        final Expr callee;
+    final Token paren;
+    final List<Expr> arguments;
   }
     static class Grouping extends Expr {
     Grouping(Expr expression) {
@@ -55,6 +97,23 @@ abstract class Expr {
     }
 
         final Expr expression;
+  }
+    static class Index extends Expr {
+    Index(Expr object, Token bracket, Expr index) {
+        this.object = object;
+        this.bracket = bracket;
+        this.index = index;
+    }
+
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitIndexExpr(this);
+    }
+
+        final Expr object;
+    final Token bracket;
+    final Expr index;
   }
     static class Literal extends Expr {
     Literal(Object value) {
@@ -68,6 +127,57 @@ abstract class Expr {
     }
 
         final Object value;
+  }
+    static class Map extends Expr {
+    Map(Token brace, List<Expr> keys, List<Expr> values) {
+        this.brace = brace;
+        this.keys = keys;
+        this.values = values;
+    }
+
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitMapExpr(this);
+    }
+
+        final Token brace;
+    final List<Expr> keys;
+    final List<Expr> values;
+  }
+    static class SetIndex extends Expr {
+    SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+        this.object = object;
+        this.bracket = bracket;
+        this.index = index;
+        this.value = value;
+    }
+
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSetIndexExpr(this);
+    }
+
+        final Expr object;
+    final Token bracket;
+    final Expr index;
+    final Expr value;
+  }
+    static class Spawn extends Expr {
+    Spawn(Token keyword, Stmt.Block body) {
+        this.keyword = keyword;
+        this.body = body;
+    }
+
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSpawnExpr(this);
+    }
+
+        final Token keyword;
+    final Stmt.Block body;
   }
     static class Unary extends Expr {
     Unary(Token operator, Expr right) {
@@ -96,6 +206,10 @@ abstract class Expr {
     }
 
         final Token name;
+
+    // Filled in by the Resolver, depth -1 means the variable is a global
+    int depth = -1;
+    int slot = -1;
   }
 
    abstract <R> R accept(Visitor<R> visitor);}
@@ -0,0 +1,395 @@
+package com.craftinginterpreters.lox;
+
+// Executable expressions. The frame is the environment of the innermost block
+// (or the globals at the top level), locals are read from it using the resolved (depth, slot).
+//
+// Besides the generic execute, nodes have a typed executeDouble so numbers can flow between
+// nodes and environment slots as primitives. It throws UnexpectedResultException with the
+// value when the node didn't produce a number.
+abstract class ExprNode extends Node {
+    abstract Object execute(Environment frame);
+
+    double executeDouble(Environment frame) throws UnexpectedResultException {
+        return expectDouble(execute(frame));
+    }
+
+    // Used when the value is thrown away, e.g. in an expression statement, so it never needs boxing
+    void executeVoid(Environment frame) {
+        execute(frame);
+    }
+
+    static double expectDouble(Object value) throws UnexpectedResultException {
+        if (value instanceof Double) return (double) value;
+        throw new UnexpectedResultException(value);
+    }
+
+    static class Literal extends ExprNode {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return value;
+        }
+    }
+
+    static class NumberLiteral extends ExprNode {
+        private final double value;
+        // Boxed once up front for the generic path
+        private final Object boxed;
+
+        NumberLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return boxed;
+        }
+
+        @Override
+        double executeDouble(Environment frame) {
+            return value;
+        }
+    }
+
+    static class ReadLocal extends ExprNode {
+        private final Token name;
+        private final int depth;
+        private final int slot;
+
+        ReadLocal(Token name, int depth, int slot) {
+            this.name = name;
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = frame.getAt(depth, slot);
+            if (value == Interpreter.uninitialized) {
+                throw new RuntimeError(name, "Variable must be initialized before use.");
+            }
+            return value;
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            Environment environment = frame.ancestor(depth);
+            if (environment.isNumber(slot)) return environment.getNumber(slot);
+            return expectDouble(execute(frame));
+        }
+    }
+
+    static class ReadGlobal extends ExprNode {
+        private final Token name;
+        private final Environment globals;
+
+        ReadGlobal(Token name, Environment globals) {
+            this.name = name;
+            this.globals = globals;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object value = globals.get(name);
+            if (value == Interpreter.uninitialized) {
+                throw new RuntimeError(name, "Variable must be initialized before use.");
+            }
+            return value;
+        }
+    }
+
+    static class WriteLocal extends ExprNode {
+        private ExprNode value;
+        private final int depth;
+        private final int slot;
+
+        // Stores numbers unboxed until the first time the value turns out not to be a number
+        private boolean numeric = true;
+
+        WriteLocal(ExprNode value, int depth, int slot) {
+            this.value = adopt(value);
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            if (numeric) {
+                try {
+                    return executeDouble(frame);
+                } catch (UnexpectedResultException e) {
+                    return e.result;
+                }
+            }
+
+            Object result = value.execute(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        }
+
+        @Override
+        double executeDouble(Environment frame) throws UnexpectedResultException {
+            if (!numeric) return expectDouble(execute(frame));
+
+            try {
+                double result = value.executeDouble(frame);
+                frame.assignNumberAt(depth, slot, result);
+                return result;
+            } catch (UnexpectedResultException e) {
+                numeric = false;
+                frame.assignAt(depth, slot, e.result);
+                throw e;
+            }
+        }
+
+        @Override
+        void executeVoid(Environment frame) {
+            if (numeric) {
+                try {
+                    executeDouble(frame);
+                } catch (UnexpectedResultException e) {
+                    // Already stored, the value is not needed
+                }
+                return;
+            }
+
+            execute(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static class WriteGlobal extends ExprNode {
+        private ExprNode value;
+        private final Token name;
+        private final Environment globals;
+
+        WriteGlobal(ExprNode value, Token name, Environment globals) {
+            this.value = adopt(value);
+            this.name = name;
+            this.globals = globals;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object result = value.execute(frame);
+            globals.assign(name, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            value = (ExprNode) newChild;
+        }
+    }
+
+    static class Negate extends ExprNode {
+        private ExprNode right;
+        private final Token operator;
+
+        Negate(ExprNode right, Token operator) {
+            this.right = adopt(right);
+            this.operator = operator;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        double executeDouble(Environment frame) {
+            try {
+                return -right.executeDouble(frame);
+            } catch (UnexpectedResultException e) {
+                throw new RuntimeError(operator, "Operand must be a number.");
+            }
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            right = (ExprNode) newChild;
+        }
+    }
+
+    static class Not extends ExprNode {
+        private ExprNode right;
+
+        Not(ExprNode right) {
+            this.right = adopt(right);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return !Interpreter.isTruthy(right.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            right = (ExprNode) newChild;
+        }
+    }
+
+    static class Call extends ExprNode {
+        private ExprNode callee;
+        private final ExprNode[] arguments;
+        private final Token paren;
+
+        Call(ExprNode callee, ExprNode[] arguments, Token paren) {
+            this.callee = adopt(callee);
+            this.arguments = arguments;
+            this.paren = paren;
+            for (ExprNode argument : arguments) adopt(argument);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object function = callee.execute(frame);
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].execute(frame);
+            }
+            return Interpreter.call(function, values, paren);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (oldChild == callee) {
+                callee = (ExprNode) newChild;
+                return;
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                if (arguments[i] == oldChild) arguments[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class ArrayLiteral extends ExprNode {
+        private final ExprNode[] elements;
+
+        ArrayLiteral(ExprNode[] elements) {
+            this.elements = elements;
+            for (ExprNode element : elements) adopt(element);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            LoxArray array = new LoxArray(elements.length);
+            for (ExprNode element : elements) {
+                array.push(element.execute(frame));
+            }
+            return array;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i] == oldChild) elements[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class MapLiteral extends ExprNode {
+        // Keys and values, alternating
+        private final ExprNode[] entries;
+
+        MapLiteral(ExprNode[] entries) {
+            this.entries = entries;
+            for (ExprNode entry : entries) adopt(entry);
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            LoxMap map = new LoxMap(entries.length / 2);
+            for (int i = 0; i < entries.length; i += 2) {
+                Object key = entries[i].execute(frame);
+                map.put(key, entries[i + 1].execute(frame));
+            }
+            return map;
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] == oldChild) entries[i] = (ExprNode) newChild;
+            }
+        }
+    }
+
+    static class Index extends ExprNode {
+        private ExprNode object;
+        private ExprNode index;
+        private final Token bracket;
+
+        Index(ExprNode object, ExprNode index, Token bracket) {
+            this.object = adopt(object);
+            this.index = adopt(index);
+            this.bracket = bracket;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object array = object.execute(frame);
+            return Interpreter.index(bracket, array, index.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (oldChild == object) object = (ExprNode) newChild;
+            if (oldChild == index) index = (ExprNode) newChild;
+        }
+    }
+
+    static class SetIndex extends ExprNode {
+        private ExprNode object;
+        private ExprNode index;
+        private ExprNode value;
+        private final Token bracket;
+
+        SetIndex(ExprNode object, ExprNode index, ExprNode value, Token bracket) {
+            this.object = adopt(object);
+            this.index = adopt(index);
+            this.value = adopt(value);
+            this.bracket = bracket;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            Object array = object.execute(frame);
+            Object at = index.execute(frame);
+            return Interpreter.setIndex(bracket, array, at, value.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            if (oldChild == object) object = (ExprNode) newChild;
+            if (oldChild == index) index = (ExprNode) newChild;
+            if (oldChild == value) value = (ExprNode) newChild;
+        }
+    }
+
+    // The body is an ordinary block node run on another thread, it makes its own environment on top of the frame
+    static class Spawn extends ExprNode {
+        private final StmtNode body;
+        private final Tasks tasks;
+
+        Spawn(StmtNode body, Tasks tasks) {
+            this.body = adopt(body);
+            this.tasks = tasks;
+        }
+
+        @Override
+        Object execute(Environment frame) {
+            return tasks.spawn(() -> body.execute(frame));
+        }
+    }
+}
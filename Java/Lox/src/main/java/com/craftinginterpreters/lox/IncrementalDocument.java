@@ -0,0 +1,394 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Front end for editors. The script is kept as a sequence of top level declarations, each with its
+// own text, tree and syntax errors, and an edit only scans and parses the declarations around it.
+//
+// A slice is the text from the end of the previous declaration to the end of its own last token,
+// so the whitespace and comments in front of a declaration belong to it. Whatever follows the last
+// declaration is the trailer, a slice without a declaration which is always the last one.
+//
+// The slices live in a treap ordered by position, where every node knows the characters, lines and
+// errors below it. Finding the slices an edit touches, cutting them out and putting the new ones in
+// are all O(log n) and nothing outside the edited region is read or rewritten, so an edit costs about
+// the size of the declarations it touches, not the size of the file. Positions are stored relative to
+// their slice and only made absolute when diagnostics() asks for them. The same goes for the lines in
+// the tokens of the trees, they count from the start of the region the slice was parsed in.
+class IncrementalDocument {
+    private static final class Slice {
+        final String text;
+        // Null for the trailer and for a declaration with a syntax error
+        final Stmt statement;
+        // Reported while parsing the slice. Offsets relative to its start, line and column aren't filled in
+        final List<ErrorReporter.Diagnostic> errors;
+        final int newlines;
+
+        Slice(String text, Stmt statement, List<ErrorReporter.Diagnostic> errors) {
+            this.text = text;
+            this.statement = statement;
+            this.errors = errors;
+            int newlines = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') newlines++;
+            }
+            this.newlines = newlines;
+        }
+    }
+
+    private static final class Node {
+        final Slice slice;
+        final int priority;
+        Node left;
+        Node right;
+        // Totals for this subtree
+        int count;
+        int chars;
+        int newlines;
+        int errors;
+
+        Node(Slice slice, int priority) {
+            this.slice = slice;
+            this.priority = priority;
+            update();
+        }
+
+        void update() {
+            count = 1 + count(left) + count(right);
+            chars = slice.text.length() + chars(left) + chars(right);
+            newlines = slice.newlines + newlines(left) + newlines(right);
+            errors = slice.errors.size() + errors(left) + errors(right);
+        }
+    }
+
+    // What a region of text parsed into. Unless the region runs to the end of the document, it is only
+    // stable if nothing in it could read on into the text after it.
+    private static final class Region {
+        final List<Slice> slices = new ArrayList<>();
+        String leftover;
+        List<ErrorReporter.Diagnostic> leftoverErrors = new ArrayList<>();
+        boolean stable;
+    }
+
+    private final Random random = new Random();
+    private Node root;
+
+    IncrementalDocument(String text) {
+        Region region = parse(text, true);
+        for (Slice slice : region.slices) {
+            root = merge(root, node(slice));
+        }
+    }
+
+    int length() {
+        return chars(root);
+    }
+
+    String text() {
+        StringBuilder text = new StringBuilder(length());
+        append(root, text);
+        return text.toString();
+    }
+
+    // Replaces removed characters at offset with inserted
+    void edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length()) {
+            throw new IllegalArgumentException("Edit outside of the document.");
+        }
+
+        // The slice in front of the edit is always included, text added at its end may continue its last token
+        int first = indexAt(Math.max(0, offset - 1));
+        int last = indexAt(offset + removed);
+        // A declaration with an error ends where the parser's recovery stopped, after a ';' or in front
+        // of the keyword which starts the next declaration. So only the one right before the region can
+        // run on into it, the ones before that end in front of text the edit doesn't touch.
+        if (first > 0 && !slice(first - 1).errors.isEmpty()) first--;
+
+        Node[] head = split(root, first);
+        Node[] middle = split(head[1], last - first + 1);
+        Node before = head[0];
+        Node after = middle[1];
+
+        StringBuilder text = new StringBuilder();
+        append(middle[0], text);
+        int start = offset - chars(before);
+        text.replace(start, start + removed, inserted);
+
+        // If the new text runs on past the region, take in the next slices, twice as many each time
+        // so a change that affects the whole rest of the file still costs a linear amount of work
+        Region region = parse(text.toString(), after == null);
+        for (int more = 1; !region.stable; more *= 2) {
+            Node[] taken = split(after, more);
+            append(taken[0], text);
+            after = taken[1];
+            region = parse(text.toString(), after == null);
+        }
+
+        Node replaced = null;
+        for (Slice slice : region.slices) {
+            replaced = merge(replaced, node(slice));
+        }
+
+        // Whitespace and comments after the last declaration go in front of the next one
+        if (after != null && !region.leftover.isEmpty()) {
+            Node[] next = split(after, 1);
+            Slice slice = next[0].slice;
+            String leftover = region.leftover;
+            List<ErrorReporter.Diagnostic> errors = new ArrayList<>();
+            for (ErrorReporter.Diagnostic error : slice.errors) {
+                errors.add(relative(error, error.offset + leftover.length()));
+            }
+            after = merge(node(new Slice(leftover + slice.text, slice.statement, errors)), next[1]);
+        }
+
+        root = merge(merge(before, replaced), after);
+    }
+
+    // Every syntax error in the document, in order, with absolute offsets, lines and columns.
+    // Only the parts of the tree which have errors are visited.
+    List<ErrorReporter.Diagnostic> diagnostics() {
+        List<ErrorReporter.Diagnostic> diagnostics = new ArrayList<>();
+        collect(root, 0, 0, diagnostics);
+        return diagnostics;
+    }
+
+    private void collect(Node node, int chars, int newlines, List<ErrorReporter.Diagnostic> diagnostics) {
+        if (node == null || node.errors == 0) return;
+
+        collect(node.left, chars, newlines, diagnostics);
+        chars += chars(node.left);
+        newlines += newlines(node.left);
+
+        String text = node.slice.text;
+        for (ErrorReporter.Diagnostic error : node.slice.errors) {
+            // Errors at the end of the text may be past the end of the slice
+            int offset = chars + error.offset;
+            int line = lineOf(offset);
+            diagnostics.add(new ErrorReporter.Diagnostic(offset, line + 1, offset - lineStart(line) + 1,
+                    error.where, error.message));
+        }
+
+        collect(node.right, chars + text.length(), newlines + node.slice.newlines, diagnostics);
+    }
+
+    // The 0-based line of the character at offset
+    int lineOf(int offset) {
+        Node node = root;
+        int line = 0;
+        while (node != null) {
+            int leftChars = chars(node.left);
+            if (offset < leftChars) {
+                node = node.left;
+                continue;
+            }
+
+            offset -= leftChars;
+            line += newlines(node.left);
+            String text = node.slice.text;
+            if (offset < text.length() || node.right == null) {
+                for (int i = 0; i < offset && i < text.length(); i++) {
+                    if (text.charAt(i) == '\n') line++;
+                }
+                return line;
+            }
+
+            offset -= text.length();
+            line += node.slice.newlines;
+            node = node.right;
+        }
+        return line;
+    }
+
+    // Offset of the first character on the 0-based line, or the end of the document past the last line
+    int lineStart(int line) {
+        Node node = root;
+        int chars = 0;
+        while (node != null && line > 0) {
+            int leftNewlines = newlines(node.left);
+            if (line <= leftNewlines) {
+                node = node.left;
+                continue;
+            }
+
+            line -= leftNewlines;
+            chars += chars(node.left);
+            if (line <= node.slice.newlines) {
+                int i = -1;
+                for (int n = 0; n < line; n++) i = node.slice.text.indexOf('\n', i + 1);
+                return chars + i + 1;
+            }
+
+            line -= node.slice.newlines;
+            chars += node.slice.text.length();
+            node = node.right;
+        }
+        return line == 0 ? chars : length();
+    }
+
+    // Offset of the newline which ends the 0-based line, or the end of the document on the last line
+    int lineEnd(int line) {
+        if (line < 0) return lineEnd(0);
+        return line < newlines(root) ? lineStart(line + 1) - 1 : length();
+    }
+
+    // Scans and parses text as a run of declarations
+    private static Region parse(String text, boolean atEnd) {
+        // Only collects, nothing is ever written to the stream
+        ErrorReporter reporter = new ErrorReporter(null);
+        Scanner scanner = new Scanner(Source.of(text), reporter);
+        Parser parser = new Parser(scanner, reporter);
+        TokenBuffer tokens = scanner.tokens();
+
+        List<Stmt> statements = new ArrayList<>();
+        List<Integer> ends = new ArrayList<>();
+        List<Integer> reported = new ArrayList<>();
+        while (parser.hasNext()) {
+            statements.add(parser.next());
+            int lastToken = parser.position() - 1;
+            ends.add(tokens.start(lastToken) + tokens.length(lastToken));
+            reported.add(reporter.errors);
+        }
+
+        // The scanner's errors only depend on the text, they go with the slice they are in. The parser's
+        // belong to the declaration it was parsing, even one at the end of the text, which is past its
+        // last token. That way they are dropped whenever the declaration is parsed again.
+        List<List<ErrorReporter.Diagnostic>> errors = new ArrayList<>();
+        for (int i = 0; i <= statements.size(); i++) errors.add(new ArrayList<>());
+        List<ErrorReporter.Diagnostic> diagnostics = reporter.diagnostics();
+        int declaration = 0;
+        for (int i = 0; i < diagnostics.size(); i++) {
+            while (declaration < reported.size() && i >= reported.get(declaration)) declaration++;
+
+            ErrorReporter.Diagnostic error = diagnostics.get(i);
+            int slice = declaration;
+            if (error.where.isEmpty()) {
+                slice = 0;
+                while (slice < ends.size() && error.offset >= ends.get(slice)) slice++;
+            }
+            errors.get(slice).add(relative(error, error.offset - (slice == 0 ? 0 : ends.get(slice - 1))));
+        }
+
+        Region region = new Region();
+        int start = 0;
+        for (int i = 0; i < statements.size(); i++) {
+            int end = ends.get(i);
+            region.slices.add(new Slice(text.substring(start, end), statements.get(i), errors.get(i)));
+            start = end;
+        }
+        region.leftover = text.substring(start);
+        region.leftoverErrors = errors.get(statements.size());
+
+        if (atEnd) {
+            region.slices.add(new Slice(region.leftover, null, region.leftoverErrors));
+            region.stable = true;
+            return region;
+        }
+
+        // An error at the end of the region may be fixed by what follows, an incomplete declaration
+        // or a string would read on into it, and so would a comment without its newline
+        boolean lastFailed = !region.slices.isEmpty() && !region.slices.get(region.slices.size() - 1).errors.isEmpty();
+        int comment = region.leftover.lastIndexOf("//");
+        boolean openComment = comment >= 0 && region.leftover.indexOf('\n', comment) < 0;
+        region.stable = !lastFailed && region.leftoverErrors.isEmpty() && !openComment;
+        return region;
+    }
+
+    private static ErrorReporter.Diagnostic relative(ErrorReporter.Diagnostic error, int offset) {
+        return new ErrorReporter.Diagnostic(offset, 0, 0, error.where, error.message);
+    }
+
+    private Node node(Slice slice) {
+        return new Node(slice, random.nextInt());
+    }
+
+    private Slice slice(int index) {
+        Node node = root;
+        for (;;) {
+            int leftCount = count(node.left);
+            if (index < leftCount) {
+                node = node.left;
+            } else if (index == leftCount) {
+                return node.slice;
+            } else {
+                index -= leftCount + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    // Index of the slice holding the character at offset, the trailer for the end of the document
+    private int indexAt(int offset) {
+        Node node = root;
+        int index = 0;
+        for (;;) {
+            int leftChars = chars(node.left);
+            if (offset < leftChars) {
+                node = node.left;
+                continue;
+            }
+
+            offset -= leftChars;
+            if (offset < node.slice.text.length() || node.right == null) return index + count(node.left);
+            offset -= node.slice.text.length();
+            index += count(node.left) + 1;
+            node = node.right;
+        }
+    }
+
+    private static void append(Node node, StringBuilder text) {
+        if (node == null) return;
+        append(node.left, text);
+        text.append(node.slice.text);
+        append(node.right, text);
+    }
+
+    // The first count slices and the rest
+    private static Node[] split(Node node, int count) {
+        if (node == null) return new Node[2];
+
+        if (count <= count(node.left)) {
+            Node[] parts = split(node.left, count);
+            node.left = parts[1];
+            node.update();
+            return new Node[]{parts[0], node};
+        }
+
+        Node[] parts = split(node.right, count - count(node.left) - 1);
+        node.right = parts[0];
+        node.update();
+        return new Node[]{node, parts[1]};
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    private static int chars(Node node) {
+        return node == null ? 0 : node.chars;
+    }
+
+    private static int newlines(Node node) {
+        return node == null ? 0 : node.newlines;
+    }
+
+    private static int errors(Node node) {
+        return node == null ? 0 : node.errors;
+    }
+}
@@ -2,18 +2,62 @@ package com.craftinginterpreters.lox;
 
 import java.util.List;
 
-class RuntimeError extends RuntimeException {
-    final Token token;
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+    // Marker value for variables declared without an initializer, shared with the VM
+    static final Object uninitialized = new Object();
+    // Unresolved variables always live in the globals, so we keep a direct reference to them
+    final Environment globals;
+    private Environment environment;
+    // Where print writes and runtime errors go, each LoxContext has its own
+    private final OutputSink out;
+    private final ErrorReporter reporter;
+    private final Tasks tasks;
+    // Statements and calls we are in, for --profile. Null when not profiling
+    private Profiler.Stack frames;
+
+    // Counted in plain fields, an Interpreter only runs on one thread, and added to the engine's
+    // Metrics every FLUSH_METRICS statements, before calls (which may block) and at the end of each
+    // interpret() and task. Null when nobody collects them
+    private static final int FLUSH_METRICS = 4096;
+    private Metrics metrics;
+    private long statements = 0;
+    private long environments = 0;
+    private long localLookups = 0;
+    private long lookupDepth = 0;
+    private long globalLookups = 0;
+
+    Interpreter() {
+        this(new Environment(), new OutputSink(System.out), new ErrorReporter(System.err));
+    }
 
-    RuntimeError(Token token, String message) {
-        super(message);
-        this.token = token;
+    // Engines which fall back to the tree walker pass their own globals so it sees the same variables
+    Interpreter(Environment globals, OutputSink out, ErrorReporter reporter) {
+        this.globals = globals;
+        this.environment = globals;
+        this.out = out;
+        this.reporter = reporter;
+        this.tasks = new Tasks(reporter);
+        Natives.define(globals);
     }
-}
 
-class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    private static Object uninitialized = new Object();
-    private Environment environment = new Environment();
+    // Each spawned task runs on its own Interpreter, since the current environment is per thread.
+    // The environments it starts from are shared with the task that spawned it.
+    private Interpreter(Interpreter parent, Environment environment) {
+        this.globals = parent.globals;
+        this.environment = environment;
+        this.out = parent.out;
+        this.reporter = parent.reporter;
+        this.tasks = parent.tasks;
+        this.metrics = parent.metrics;
+    }
+
+    void profile(Profiler profiler) {
+        frames = profiler.stack();
+    }
+
+    void collect(Metrics metrics) {
+        this.metrics = metrics;
+    }
 
     void interpret(List<Stmt> statements) {
         try {
@@ -21,12 +65,41 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            reporter.runtimeError(error);
+        } finally {
+            flushMetrics();
         }
     }
 
+    private void flushMetrics() {
+        if (metrics == null) return;
+
+        metrics.statements.add(statements);
+        metrics.environments.add(environments);
+        metrics.localLookups.add(localLookups);
+        metrics.lookupDepth.add(lookupDepth);
+        metrics.globalLookups.add(globalLookups);
+        statements = environments = localLookups = lookupDepth = globalLookups = 0;
+    }
+
+    // Spawned tasks keep running after interpret() returns, a program is only done once they are
+    void awaitTasks() {
+        tasks.awaitAll();
+    }
+
     private void execute(Stmt stmt) {
-        stmt.accept(this);
+        if (++statements == FLUSH_METRICS) flushMetrics();
+        if (frames == null) {
+            stmt.accept(this);
+            return;
+        }
+
+        frames.push(stmt);
+        try {
+            stmt.accept(this);
+        } finally {
+            frames.pop();
+        }
     }
 
     private void executeBlock(List<Stmt> statements, Environment environment) {
@@ -56,7 +129,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        out.println(value);
         return null;
     }
 
@@ -67,13 +140,18 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name, value);
+        if (stmt.slot < 0) {
+            globals.define(stmt.name, value);
+        } else {
+            environment.defineAt(stmt.slot, value);
+        }
         return null;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
+        environments++;
+        executeBlock(stmt.statements, new Environment(environment, stmt.slots));
         return null;
     }
 
@@ -81,7 +159,11 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        if (expr.depth < 0) {
+            globals.assign(expr.name, value);
+        } else {
+            environment.assignAt(expr.depth, expr.slot, value);
+        }
         return value;
     }
 
@@ -90,49 +172,55 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
+        return binary(expr.operator, left, right);
+    }
+
+    // The operator semantics live here so the other engines can fall back to exactly the same behaviour
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left <= (double) right;
             case BANG_EQUAL:
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left - (double) right;
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
 
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
+                // Strings are Strings or Ropes, + makes a Rope once they get long
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
                 }
 
                 // If both the above if doesn't match then we throw error
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
 
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
 
                 // Check if right operand is 0, if so throw divide by zero error
                 if ((double) right == 0) {
-                    throw new RuntimeError(expr.operator, "Cannot divide by Zero");
+                    throw new RuntimeError(operator, "Cannot divide by Zero");
                 }
 
                 return (double) left / (double) right;
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left * (double) right;
         }
 
@@ -140,11 +228,120 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        Object callee = evaluate(expr.callee);
+
+        Object[] arguments = new Object[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = evaluate(expr.arguments.get(i));
+        }
+
+        flushMetrics();
+        if (frames == null) return call(callee, arguments, expr.paren);
+
+        frames.push(expr);
+        try {
+            return call(callee, arguments, expr.paren);
+        } finally {
+            frames.pop();
+        }
+    }
+
+    static Object call(Object callee, Object[] arguments, Token paren) {
+        if (!(callee instanceof LoxCallable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes.");
+        }
+
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new RuntimeError(paren, "Expected " + function.arity() + " arguments but got " + arguments.length + ".");
+        }
+
+        return function.call(paren, arguments);
+    }
+
+    @Override
+    public Object visitSpawnExpr(Expr.Spawn expr) {
+        Interpreter task = new Interpreter(this, environment);
+        if (frames != null) task.frames = frames.fork(expr);
+
+        Environment enclosing = environment;
+        return tasks.spawn(() -> task.executeTask(expr.body, enclosing));
+    }
+
+    private void executeTask(Stmt.Block body, Environment enclosing) {
+        environments++;
+        try {
+            executeBlock(body.statements, new Environment(enclosing, body.slots));
+        } finally {
+            if (frames != null) frames.close();
+            flushMetrics();
+        }
+    }
+
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
         return evaluate(expr.expression);
     }
 
+    @Override
+    public Object visitArrayExpr(Expr.Array expr) {
+        LoxArray array = new LoxArray(expr.elements.size());
+        for (Expr element : expr.elements) {
+            array.push(evaluate(element));
+        }
+        return array;
+    }
+
+    // Keys and values are evaluated in order, a key which comes again replaces the earlier value
+    @Override
+    public Object visitMapExpr(Expr.Map expr) {
+        LoxMap map = new LoxMap(expr.keys.size());
+        for (int i = 0; i < expr.keys.size(); i++) {
+            Object key = evaluate(expr.keys.get(i));
+            map.put(key, evaluate(expr.values.get(i)));
+        }
+        return map;
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        return index(expr.bracket, object, index);
+    }
+
+    @Override
+    public Object visitSetIndexExpr(Expr.SetIndex expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+        return setIndex(expr.bracket, object, index, value);
+    }
+
+    // array[index] or map[key], bracket is the closing bracket, like paren for calls. A key which
+    // isn't in the map gives nil.
+    static Object index(Token bracket, Object object, Object index) {
+        if (object instanceof LoxMap) return ((LoxMap) object).get(index);
+        return array(bracket, object).get(bracket, index);
+    }
+
+    // array[index] = value or map[key] = value, evaluates to the value like any other assignment
+    static Object setIndex(Token bracket, Object object, Object index, Object value) {
+        if (object instanceof LoxMap) {
+            ((LoxMap) object).put(index, value);
+        } else {
+            array(bracket, object).set(bracket, index, value);
+        }
+        return value;
+    }
+
+    private static LoxArray array(Token bracket, Object object) {
+        if (object instanceof LoxArray) return (LoxArray) object;
+        throw new RuntimeError(bracket, "Only arrays and maps can be indexed.");
+    }
+
 
     @Override
     public Object visitLiteralExpr(Expr.Literal expr) {
@@ -153,11 +350,15 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr);
+        Object right = evaluate(expr.right);
+
+        return unary(expr.operator, right);
+    }
 
-        switch (expr.operator.type) {
+    static Object unary(Token operator, Object right) {
+        switch (operator.type) {
             case MINUS:
-                checkNumberOperand(expr.operator, right);
+                checkNumberOperand(operator, right);
                 return -(double) right;
             case BANG:
                 return !isTruthy(right);
@@ -168,7 +369,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        Object value = environment.get(expr.name);
+        Object value = lookUpVariable(expr);
 
         if(value == uninitialized){
             throw new RuntimeError(expr.name, "Variable must be initialized before use.");
@@ -177,34 +378,58 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return value;
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    private Object lookUpVariable(Expr.Variable expr) {
+        if (expr.depth < 0) {
+            globalLookups++;
+            return globals.get(expr.name);
+        }
+
+        localLookups++;
+        lookupDepth += expr.depth;
+        return environment.getAt(expr.depth, expr.slot);
+    }
+
+    private static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator,
+    private static void checkNumberOperands(Token operator,
                                      Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
 
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) return true;
         if (a == null) return false;
+        // A Rope equals the String it stands for. Strings of different lengths never need flattening
+        if (a instanceof Rope || b instanceof Rope) {
+            if (!(a instanceof CharSequence && b instanceof CharSequence)) return false;
+            if (((CharSequence) a).length() != ((CharSequence) b).length()) return false;
+            return a.toString().equals(b.toString());
+        }
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
+            // Whole numbers are the common case, Double.toString prints them the same minus the ".0"
+            double value = (double) object;
+            if (value == (long) value && Math.abs(value) < 1e7
+                    && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0)) {
+                return Long.toString((long) value);
+            }
+
             String text = object.toString();
             if (text.endsWith(".0")) {
                 text = text.substring(0, text.length() - 2);
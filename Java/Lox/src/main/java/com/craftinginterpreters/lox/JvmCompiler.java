@@ -0,0 +1,718 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.ClassAssembler.Opcodes.*;
+
+// Compiles the resolved statements into JVM classes for the JvmInterpreter, so HotSpot sees the
+// Lox program itself instead of the visitor calls of the tree walker.
+//
+// Every expression is compiled to one of three kinds of JVM value: a double, a boolean (an int) or
+// an Object holding a Lox value. Number literals and arithmetic stay as doubles, and local variables
+// become JVM locals. A local which only ever holds numbers is kept as a double local, the others hold
+// the boxed value. When an operand isn't known to be a number the compiled code checks it with
+// instanceof and, if the check fails, does the whole operation again through Interpreter.binary,
+// which gives the same result or the same RuntimeError (with the operator's line) as the other engines.
+//
+// Globals stay in the Environment map, and Tokens and string values are handed to the generated
+// code through an Object[] for each method. Top level statements are grouped into methods which
+// stay under HotSpot's 8000 byte limit for compiling a method, and into several classes when the
+// constant pool of one is full.
+class JvmCompiler implements Expr.Visitor<JvmCompiler.Kind>, Stmt.Visitor<Void> {
+    enum Kind { OBJECT, DOUBLE, BOOLEAN }
+
+    // Thrown for programs the compiler can't handle, the JvmInterpreter runs those on the tree walker
+    static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported(String feature) {
+            super(feature);
+        }
+    }
+
+    // One generated class, run() takes the constants of each of its methods and the globals
+    static class Script {
+        final byte[] bytes;
+        final Object[][] constants;
+
+        Script(byte[] bytes, Object[][] constants) {
+            this.bytes = bytes;
+            this.constants = constants;
+        }
+    }
+
+    private static final String RUN_DESCRIPTOR = "([[Ljava/lang/Object;Lcom/craftinginterpreters/lox/Environment;)V";
+
+    private static final String CLASS_NAME = "com/craftinginterpreters/lox/LoxScript";
+    private static final String METHOD_DESCRIPTOR = "([Ljava/lang/Object;Lcom/craftinginterpreters/lox/Environment;)V";
+    private static final String DOUBLE = "java/lang/Double";
+    private static final String BOOLEAN = "java/lang/Boolean";
+    private static final String STRING = "java/lang/String";
+    private static final String TOKEN = "com/craftinginterpreters/lox/Token";
+    private static final String ENVIRONMENT = "com/craftinginterpreters/lox/Environment";
+    private static final String INTERPRETER = "com/craftinginterpreters/lox/Interpreter";
+    private static final String SINK = "com/craftinginterpreters/lox/OutputSink";
+    private static final String RUNTIME = "com/craftinginterpreters/lox/JvmInterpreter";
+
+    // Start a new method once one gets this big, HotSpot doesn't compile methods over 8000 bytes
+    private static final int METHOD_SIZE = 6000;
+    // Each method costs a few constants and a few bytes in run()
+    private static final int METHODS_PER_CLASS = 2000;
+
+    // The method arguments
+    private static final int CONSTANTS = 0;
+    private static final int GLOBALS = 1;
+
+    private static class Local {
+        final int index;
+        // Optimistic until a value which isn't a double is stored in it
+        boolean numeric = true;
+
+        Local(int index) {
+            this.index = index;
+        }
+    }
+
+    private final List<Script> scripts = new ArrayList<>();
+    // print goes to the context's stream, which reaches the generated code as a constant
+    private final OutputSink out;
+    private ClassAssembler assembler;
+    private List<Object[]> classConstants;
+    private ClassAssembler.Method method;
+    private List<Object> constants;
+
+    // The locals of the blocks we are in, innermost last, and of every block we have seen
+    private final List<Local[]> scopes = new ArrayList<>();
+    private final Map<Stmt.Block, Local[]> blockLocals = new IdentityHashMap<>();
+    // First JVM local which isn't taken by a Lox local or a temporary
+    private int nextLocal = 2;
+    // Set when a local turns out not to be numeric, the statement is then compiled again
+    private boolean changed;
+
+    JvmCompiler(OutputSink out) {
+        this.out = out;
+    }
+
+    List<Script> compile(List<Stmt> statements) {
+        startClass();
+
+        for (Stmt statement : statements) {
+            int start = method.size();
+            int constantCount = constants.size();
+
+            do {
+                changed = false;
+                method.reset(start);
+                constants.subList(constantCount, constants.size()).clear();
+                statement.accept(this);
+            } while (changed);
+
+            if (method.size() > METHOD_SIZE) {
+                finishMethod();
+                if (classConstants.size() >= METHODS_PER_CLASS || assembler.isFull()) {
+                    // Starts the new class's first method too
+                    finishClass();
+                    startClass();
+                } else {
+                    startMethod();
+                }
+            }
+        }
+
+        finishMethod();
+        finishClass();
+        return scripts;
+    }
+
+    private void startClass() {
+        assembler = new ClassAssembler(CLASS_NAME);
+        classConstants = new ArrayList<>();
+        startMethod();
+    }
+
+    private void startMethod() {
+        method = assembler.method(ACC_PRIVATE | ACC_STATIC, "m" + classConstants.size(), METHOD_DESCRIPTOR);
+        constants = new ArrayList<>();
+    }
+
+    private void finishMethod() {
+        method.op(RETURN, 0);
+        classConstants.add(constants.toArray());
+    }
+
+    // run() calls the methods one after the other
+    private void finishClass() {
+        ClassAssembler.Method run = assembler.method(ACC_PUBLIC | ACC_STATIC, "run", RUN_DESCRIPTOR);
+        for (int i = 0; i < classConstants.size(); i++) {
+            run.local(ALOAD, CONSTANTS);
+            run.pushInt(i);
+            run.op(AALOAD, -1);
+            run.type(CHECKCAST, "[Ljava/lang/Object;");
+            run.local(ALOAD, GLOBALS);
+            run.invoke(INVOKESTATIC, CLASS_NAME, "m" + i, METHOD_DESCRIPTOR);
+        }
+        run.op(RETURN, 0);
+
+        scripts.add(new Script(assembler.toByteArray(), classConstants.toArray(new Object[0][])));
+    }
+
+    private Kind compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // Statements
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        int base = nextLocal;
+        Local[] locals = blockLocals.computeIfAbsent(stmt, block -> {
+            Local[] created = new Local[block.slots];
+            for (int i = 0; i < created.length; i++) {
+                // Two JVM slots each, in case it holds a double
+                created[i] = new Local(base + 2 * i);
+            }
+            return created;
+        });
+
+        scopes.add(locals);
+        nextLocal = base + 2 * locals.length;
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        nextLocal = base;
+        scopes.remove(scopes.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        pop(compile(stmt.expression));
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        constant(out, SINK);
+        box(compile(stmt.expression));
+        method.invoke(INVOKEVIRTUAL, SINK, "println", "(Ljava/lang/Object;)V");
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.slot < 0) {
+            method.local(ALOAD, GLOBALS);
+            constant(stmt.name, TOKEN);
+            initializer(stmt);
+            method.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define", "(L" + TOKEN + ";Ljava/lang/Object;)V");
+            return null;
+        }
+
+        Local local = scopes.get(scopes.size() - 1)[stmt.slot];
+        if (local.numeric) {
+            Kind kind = stmt.initializer == null ? Kind.OBJECT : compile(stmt.initializer);
+            if (kind != Kind.DOUBLE) {
+                notNumeric(local);
+                return null;
+            }
+            method.local(DSTORE, local.index);
+        } else {
+            initializer(stmt);
+            method.local(ASTORE, local.index);
+        }
+        return null;
+    }
+
+    // The boxed initial value
+    private void initializer(Stmt.Var stmt) {
+        if (stmt.initializer == null) {
+            method.getStatic(INTERPRETER, "uninitialized", "Ljava/lang/Object;");
+        } else {
+            box(compile(stmt.initializer));
+        }
+    }
+
+    // Expressions
+
+    @Override
+    public Kind visitAssignExpr(Expr.Assign expr) {
+        Kind kind = compile(expr.value);
+
+        if (expr.depth < 0) {
+            box(kind);
+            int saved = nextLocal;
+            int value = temp();
+            method.local(ASTORE, value);
+            method.local(ALOAD, GLOBALS);
+            constant(expr.name, TOKEN);
+            method.local(ALOAD, value);
+            method.invoke(INVOKEVIRTUAL, ENVIRONMENT, "assign", "(L" + TOKEN + ";Ljava/lang/Object;)V");
+            method.local(ALOAD, value);
+            nextLocal = saved;
+            return Kind.OBJECT;
+        }
+
+        Local local = local(expr.depth, expr.slot);
+        if (local.numeric) {
+            if (kind != Kind.DOUBLE) {
+                notNumeric(local);
+                return kind;
+            }
+            method.op(DUP2, 2);
+            method.local(DSTORE, local.index);
+            return Kind.DOUBLE;
+        }
+
+        box(kind);
+        method.op(DUP, 1);
+        method.local(ASTORE, local.index);
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitBinaryExpr(Expr.Binary expr) {
+        switch (expr.operator.type) {
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return numeric(expr);
+            case EQUAL_EQUAL:
+            case BANG_EQUAL:
+                return equality(expr);
+        }
+
+        // Only + is left, it only gets a fast path when both sides are known to be numbers
+        Kind left = compile(expr.left);
+        Kind right = compile(expr.right);
+        if (left == Kind.DOUBLE && right == Kind.DOUBLE) {
+            method.op(DADD, -2);
+            return Kind.DOUBLE;
+        }
+
+        boxBoth(left, right);
+        generic(expr.operator);
+        return Kind.OBJECT;
+    }
+
+    // Arithmetic and comparisons, which need two numbers
+    private Kind numeric(Expr.Binary expr) {
+        int saved = nextLocal;
+        Kind leftKind = compile(expr.left);
+        int left = store(leftKind);
+        Kind rightKind = compile(expr.right);
+        int right = store(rightKind);
+
+        // A boolean is never a number, just let the interpreter report it
+        if (leftKind == Kind.BOOLEAN || rightKind == Kind.BOOLEAN) {
+            loadBoxed(leftKind, left);
+            loadBoxed(rightKind, right);
+            generic(expr.operator);
+            nextLocal = saved;
+            return Kind.OBJECT;
+        }
+
+        ClassAssembler.Label slow = new ClassAssembler.Label();
+        ClassAssembler.Label done = new ClassAssembler.Label();
+        boolean guarded = leftKind == Kind.OBJECT || rightKind == Kind.OBJECT;
+
+        int leftNumber = leftKind == Kind.DOUBLE ? left : unbox(left, slow);
+        int rightNumber = rightKind == Kind.DOUBLE ? right : unbox(right, slow);
+
+        // Division by zero is an error, the slow path reports it
+        if (expr.operator.type == TokenType.SLASH) {
+            method.local(DLOAD, rightNumber);
+            method.op(DCONST_0, 2);
+            method.op(DCMPL, -3);
+            method.jump(IFEQ, slow);
+            guarded = true;
+        }
+
+        method.local(DLOAD, leftNumber);
+        method.local(DLOAD, rightNumber);
+
+        Kind result;
+        switch (expr.operator.type) {
+            case MINUS: method.op(DSUB, -2); result = Kind.DOUBLE; break;
+            case STAR: method.op(DMUL, -2); result = Kind.DOUBLE; break;
+            case SLASH: method.op(DDIV, -2); result = Kind.DOUBLE; break;
+            // NaN compares false, so > and >= use dcmpl (NaN gives -1) and < and <= use dcmpg (NaN gives 1)
+            case GREATER: compare(DCMPL, IFGT, done); result = Kind.BOOLEAN; break;
+            case GREATER_EQUAL: compare(DCMPL, IFGE, done); result = Kind.BOOLEAN; break;
+            case LESS: compare(DCMPG, IFLT, done); result = Kind.BOOLEAN; break;
+            default: compare(DCMPG, IFLE, done); result = Kind.BOOLEAN; break;
+        }
+
+        if (guarded) {
+            method.jump(GOTO, done);
+            method.bind(slow);
+            loadBoxed(leftKind, left);
+            loadBoxed(rightKind, right);
+            generic(expr.operator);
+            unboxResult(result);
+        }
+        method.bind(done);
+
+        nextLocal = saved;
+        return result;
+    }
+
+    // Leaves 1 or 0 for the comparison of the two doubles on the stack
+    private void compare(int compare, int jump, ClassAssembler.Label done) {
+        ClassAssembler.Label yes = new ClassAssembler.Label();
+        method.op(compare, -3);
+        method.jump(jump, yes);
+        method.op(ICONST_0, 1);
+        method.jump(GOTO, done);
+        method.bind(yes);
+        method.op(ICONST_1, 1);
+    }
+
+    private Kind equality(Expr.Binary expr) {
+        boolean equal = expr.operator.type == TokenType.EQUAL_EQUAL;
+        Kind left = compile(expr.left);
+        Kind right = compile(expr.right);
+
+        if (left == right && left != Kind.OBJECT) {
+            ClassAssembler.Label different = new ClassAssembler.Label();
+            ClassAssembler.Label done = new ClassAssembler.Label();
+
+            if (left == Kind.DOUBLE) {
+                // Same as Double.equals, which is what isEqual uses: NaN equals NaN, 0 and -0 differ
+                int saved = nextLocal;
+                int rightValue = temp();
+                method.local(DSTORE, rightValue);
+                method.invoke(INVOKESTATIC, DOUBLE, "doubleToLongBits", "(D)J");
+                method.local(DLOAD, rightValue);
+                method.invoke(INVOKESTATIC, DOUBLE, "doubleToLongBits", "(D)J");
+                method.op(LCMP, -3);
+                method.jump(IFNE, different);
+                nextLocal = saved;
+            } else {
+                method.jump(IF_ICMPNE, different);
+            }
+
+            method.op(equal ? ICONST_1 : ICONST_0, 1);
+            method.jump(GOTO, done);
+            method.bind(different);
+            method.op(equal ? ICONST_0 : ICONST_1, 1);
+            method.bind(done);
+            return Kind.BOOLEAN;
+        }
+
+        boxBoth(left, right);
+        method.invoke(INVOKESTATIC, INTERPRETER, "isEqual", "(Ljava/lang/Object;Ljava/lang/Object;)Z");
+        if (!equal) not();
+        return Kind.BOOLEAN;
+    }
+
+    @Override
+    public Kind visitCallExpr(Expr.Call expr) {
+        box(compile(expr.callee));
+
+        method.pushInt(expr.arguments.size());
+        method.type(ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            method.op(DUP, 1);
+            method.pushInt(i);
+            box(compile(expr.arguments.get(i)));
+            method.op(AASTORE, -3);
+        }
+
+        constant(expr.paren, TOKEN);
+        method.invoke(INVOKESTATIC, INTERPRETER, "call",
+                "(Ljava/lang/Object;[Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+        return Kind.OBJECT;
+    }
+
+    // A task would need the enclosing locals, which here are JVM locals of the spawning method.
+    // Programs using spawn run on the tree walker instead.
+    @Override
+    public Kind visitSpawnExpr(Expr.Spawn expr) {
+        throw new Unsupported("spawn");
+    }
+
+    @Override
+    public Kind visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    // The elements are collected in an Object[] like the arguments of a call
+    @Override
+    public Kind visitArrayExpr(Expr.Array expr) {
+        method.pushInt(expr.elements.size());
+        method.type(ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < expr.elements.size(); i++) {
+            method.op(DUP, 1);
+            method.pushInt(i);
+            box(compile(expr.elements.get(i)));
+            method.op(AASTORE, -3);
+        }
+        method.invoke(INVOKESTATIC, RUNTIME, "array", "([Ljava/lang/Object;)Ljava/lang/Object;");
+        return Kind.OBJECT;
+    }
+
+    // And the keys and values in one Object[], alternating
+    @Override
+    public Kind visitMapExpr(Expr.Map expr) {
+        method.pushInt(expr.keys.size() * 2);
+        method.type(ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < expr.keys.size(); i++) {
+            method.op(DUP, 1);
+            method.pushInt(i * 2);
+            box(compile(expr.keys.get(i)));
+            method.op(AASTORE, -3);
+            method.op(DUP, 1);
+            method.pushInt(i * 2 + 1);
+            box(compile(expr.values.get(i)));
+            method.op(AASTORE, -3);
+        }
+        method.invoke(INVOKESTATIC, RUNTIME, "map", "([Ljava/lang/Object;)Ljava/lang/Object;");
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitIndexExpr(Expr.Index expr) {
+        box(compile(expr.object));
+        box(compile(expr.index));
+        constant(expr.bracket, TOKEN);
+        method.invoke(INVOKESTATIC, RUNTIME, "index",
+                "(Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitSetIndexExpr(Expr.SetIndex expr) {
+        box(compile(expr.object));
+        box(compile(expr.index));
+        box(compile(expr.value));
+        constant(expr.bracket, TOKEN);
+        method.invoke(INVOKESTATIC, RUNTIME, "setIndex",
+                "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+
+        if (value == null) {
+            method.op(ACONST_NULL, 1);
+            return Kind.OBJECT;
+        }
+
+        if (value instanceof Boolean) {
+            method.op((Boolean) value ? ICONST_1 : ICONST_0, 1);
+            return Kind.BOOLEAN;
+        }
+
+        if (value instanceof Double) {
+            if (assembler.isFull()) {
+                constant(value, DOUBLE);
+                method.invoke(INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D");
+            } else {
+                method.pushDouble((Double) value);
+            }
+            return Kind.DOUBLE;
+        }
+
+        constant(value, STRING);
+        return Kind.OBJECT;
+    }
+
+    @Override
+    public Kind visitUnaryExpr(Expr.Unary expr) {
+        Kind kind = compile(expr.right);
+
+        if (expr.operator.type == TokenType.BANG) {
+            switch (kind) {
+                case DOUBLE:
+                    // Numbers are always true
+                    method.op(POP2, -2);
+                    method.op(ICONST_0, 1);
+                    return Kind.BOOLEAN;
+                case OBJECT:
+                    method.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z");
+                    break;
+            }
+            not();
+            return Kind.BOOLEAN;
+        }
+
+        switch (kind) {
+            case DOUBLE:
+                method.op(DNEG, 0);
+                return Kind.DOUBLE;
+            case BOOLEAN:
+                box(kind);
+                constant(expr.operator, TOKEN);
+                method.invoke(INVOKESTATIC, RUNTIME, "unary", "(Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+                return Kind.OBJECT;
+        }
+
+        ClassAssembler.Label slow = new ClassAssembler.Label();
+        ClassAssembler.Label done = new ClassAssembler.Label();
+        int saved = nextLocal;
+        int value = store(kind);
+        int number = unbox(value, slow);
+        method.local(DLOAD, number);
+        method.op(DNEG, 0);
+        method.jump(GOTO, done);
+
+        method.bind(slow);
+        method.local(ALOAD, value);
+        constant(expr.operator, TOKEN);
+        method.invoke(INVOKESTATIC, RUNTIME, "unary", "(Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+        unboxResult(Kind.DOUBLE);
+        method.bind(done);
+
+        nextLocal = saved;
+        return Kind.DOUBLE;
+    }
+
+    @Override
+    public Kind visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth < 0) {
+            method.local(ALOAD, GLOBALS);
+            constant(expr.name, TOKEN);
+            method.invoke(INVOKEVIRTUAL, ENVIRONMENT, "get", "(L" + TOKEN + ";)Ljava/lang/Object;");
+            checkInitialized(expr.name);
+            return Kind.OBJECT;
+        }
+
+        Local local = local(expr.depth, expr.slot);
+        if (local.numeric) {
+            method.local(DLOAD, local.index);
+            return Kind.DOUBLE;
+        }
+
+        method.local(ALOAD, local.index);
+        checkInitialized(expr.name);
+        return Kind.OBJECT;
+    }
+
+    private void checkInitialized(Token name) {
+        ClassAssembler.Label initialized = new ClassAssembler.Label();
+        method.op(DUP, 1);
+        method.getStatic(INTERPRETER, "uninitialized", "Ljava/lang/Object;");
+        method.jump(IF_ACMPNE, initialized);
+        constant(name, TOKEN);
+        method.invoke(INVOKESTATIC, RUNTIME, "uninitialized", "(L" + TOKEN + ";)L" + "com/craftinginterpreters/lox/RuntimeError;");
+        method.op(ATHROW, -1);
+        method.bind(initialized);
+    }
+
+    // Helpers
+
+    private Local local(int depth, int slot) {
+        return scopes.get(scopes.size() - 1 - depth)[slot];
+    }
+
+    private void notNumeric(Local local) {
+        local.numeric = false;
+        changed = true;
+    }
+
+    // Pushes a value from the method's constants
+    private void constant(Object value, String type) {
+        method.local(ALOAD, CONSTANTS);
+        method.pushInt(constants.size());
+        method.op(AALOAD, -1);
+        method.type(CHECKCAST, type);
+        constants.add(value);
+    }
+
+    // Interpreter.binary with the operator last, so it can be pushed after the operands
+    private void generic(Token operator) {
+        constant(operator, TOKEN);
+        method.invoke(INVOKESTATIC, RUNTIME, "binary",
+                "(Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+    }
+
+    private int temp() {
+        int index = nextLocal;
+        nextLocal += 2;
+        return index;
+    }
+
+    // Stores the value on top of the stack in a new temporary
+    private int store(Kind kind) {
+        int index = temp();
+        switch (kind) {
+            case DOUBLE: method.local(DSTORE, index); break;
+            case BOOLEAN: method.local(ISTORE, index); break;
+            default: method.local(ASTORE, index);
+        }
+        return index;
+    }
+
+    private void loadBoxed(Kind kind, int index) {
+        switch (kind) {
+            case DOUBLE: method.local(DLOAD, index); break;
+            case BOOLEAN: method.local(ILOAD, index); break;
+            default: method.local(ALOAD, index);
+        }
+        box(kind);
+    }
+
+    // Jumps to fail unless the Object in the temporary is a number, otherwise unboxes it into a new one
+    private int unbox(int index, ClassAssembler.Label fail) {
+        method.local(ALOAD, index);
+        method.type(INSTANCEOF, DOUBLE);
+        method.jump(IFEQ, fail);
+        method.local(ALOAD, index);
+        method.type(CHECKCAST, DOUBLE);
+        method.invoke(INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D");
+        return store(Kind.DOUBLE);
+    }
+
+    private void unboxResult(Kind kind) {
+        if (kind == Kind.DOUBLE) {
+            method.type(CHECKCAST, DOUBLE);
+            method.invoke(INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D");
+        } else {
+            method.type(CHECKCAST, BOOLEAN);
+            method.invoke(INVOKEVIRTUAL, BOOLEAN, "booleanValue", "()Z");
+        }
+    }
+
+    private void box(Kind kind) {
+        switch (kind) {
+            case DOUBLE:
+                method.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)Ljava/lang/Double;");
+                break;
+            case BOOLEAN:
+                method.invoke(INVOKESTATIC, BOOLEAN, "valueOf", "(Z)Ljava/lang/Boolean;");
+                break;
+        }
+    }
+
+    // Boxes the two values on top of the stack
+    private void boxBoth(Kind left, Kind right) {
+        if (left == Kind.OBJECT) {
+            box(right);
+            return;
+        }
+
+        int saved = nextLocal;
+        int rightValue = store(right);
+        box(left);
+        loadBoxed(right, rightValue);
+        nextLocal = saved;
+    }
+
+    private void pop(Kind kind) {
+        method.op(kind == Kind.DOUBLE ? POP2 : POP, kind == Kind.DOUBLE ? -2 : -1);
+    }
+
+    private void not() {
+        method.op(ICONST_1, 1);
+        method.op(IXOR, -1);
+    }
+}
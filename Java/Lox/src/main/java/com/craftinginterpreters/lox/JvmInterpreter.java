@@ -0,0 +1,119 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs programs by compiling them to JVM classes with the JvmCompiler, selected with --engine=jvm.
+// Each program (or REPL line) becomes a hidden class, which the JVM unloads again once it is done.
+// The statements have to go through the Resolver first.
+class JvmInterpreter {
+    private static final MethodType RUN = MethodType.methodType(void.class, Object[][].class, Environment.class);
+
+    final Environment globals = new Environment();
+    private final OutputSink out;
+    private final ErrorReporter reporter;
+
+    // For the rare program which is too big for a class file, or which uses spawn
+    private final Interpreter fallback;
+
+    JvmInterpreter() {
+        this(new OutputSink(System.out), new ErrorReporter(System.err));
+    }
+
+    JvmInterpreter(OutputSink out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+        this.fallback = new Interpreter(globals, out, reporter);
+    }
+
+    void interpret(List<Stmt> statements) {
+        List<MethodHandle> scripts;
+        try {
+            scripts = prepare(statements);
+        } catch (ClassAssembler.LimitExceeded | JvmCompiler.Unsupported | LinkageError error) {
+            // A class the JVM refuses to define is a compiler bug, but the program can still run.
+            // Nothing has run yet, every class is defined before the first one runs.
+            fallback.interpret(statements);
+            return;
+        }
+        execute(scripts);
+    }
+
+    // Only the fallback can run programs which spawn tasks
+    void awaitTasks() {
+        fallback.awaitTasks();
+    }
+
+    // Compiling and running are split so a program can be run more than once.
+    // Each handle takes the globals and runs one generated class.
+    List<MethodHandle> prepare(List<Stmt> statements) {
+        List<MethodHandle> scripts = new ArrayList<>();
+        for (JvmCompiler.Script script : new JvmCompiler(out).compile(statements)) {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(script.bytes, true);
+                MethodHandle run = lookup.findStatic(lookup.lookupClass(), "run", RUN);
+                scripts.add(MethodHandles.insertArguments(run, 0, (Object) script.constants));
+            } catch (IllegalAccessException | NoSuchMethodException error) {
+                // The lookup always has access to the class it just defined
+                throw new IllegalStateException(error);
+            }
+        }
+        return scripts;
+    }
+
+    void execute(List<MethodHandle> scripts) {
+        try {
+            for (MethodHandle script : scripts) {
+                script.invokeExact(globals);
+            }
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        } catch (RuntimeException | Error error) {
+            throw error;
+        } catch (Throwable error) {
+            // run() doesn't throw checked exceptions
+            throw new IllegalStateException(error);
+        }
+    }
+
+    // Called by the generated code
+
+    static Object binary(Object left, Object right, Token operator) {
+        return Interpreter.binary(operator, left, right);
+    }
+
+    static Object unary(Object right, Token operator) {
+        return Interpreter.unary(operator, right);
+    }
+
+    static Object array(Object[] elements) {
+        LoxArray array = new LoxArray(elements.length);
+        for (Object element : elements) {
+            array.push(element);
+        }
+        return array;
+    }
+
+    static Object map(Object[] entries) {
+        LoxMap map = new LoxMap(entries.length / 2);
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put(entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+
+    static Object index(Object array, Object index, Token bracket) {
+        return Interpreter.index(bracket, array, index);
+    }
+
+    static Object setIndex(Object array, Object index, Object value, Token bracket) {
+        return Interpreter.setIndex(bracket, array, index, value);
+    }
+
+    static RuntimeError uninitialized(Token name) {
+        return new RuntimeError(name, "Variable must be initialized before use.");
+    }
+}
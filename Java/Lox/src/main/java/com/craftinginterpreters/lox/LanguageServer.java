@@ -0,0 +1,452 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Language server for editors, started with jlox --lsp. It speaks the Language Server Protocol on
+// stdin and stdout and reports syntax errors as the user types. Documents are synced incrementally,
+// each change goes to the document's IncrementalDocument, so only the declarations around the edit
+// are scanned and parsed again.
+//
+// Positions in the protocol count UTF-16 code units, which is what a Java String counts too.
+class LanguageServer {
+    private final InputStream in;
+    private final OutputStream out;
+    private final Map<String, IncrementalDocument> documents = new HashMap<>();
+    private boolean shutdown = false;
+
+    LanguageServer(InputStream in, OutputStream out) {
+        this.in = new BufferedInputStream(in);
+        this.out = out;
+    }
+
+    // Serves until the client says exit, returns the exit code the protocol asks for
+    int run() throws IOException {
+        for (;;) {
+            String body;
+            try {
+                body = read();
+            } catch (IllegalArgumentException error) {
+                send(error(null, -32600, error.getMessage()));
+                continue;
+            }
+            if (body == null) return 1;
+
+            Map<String, Object> message;
+            try {
+                message = Json.object(Json.parse(body));
+            } catch (IllegalArgumentException error) {
+                send(error(null, -32700, error.getMessage()));
+                continue;
+            }
+
+            Object id = message.get("id");
+            Object method = message.get("method");
+            // A response to something we never sent
+            if (method == null) continue;
+            if (!(method instanceof String)) {
+                if (id != null) send(error(id, -32600, "The method has to be a string."));
+                continue;
+            }
+            if (method.equals("exit")) return shutdown ? 0 : 1;
+
+            // Whatever a message holds, the server goes on with the next one. Requests with params we
+            // can't use get an error, notifications are dropped like the ones which aren't JSON.
+            try {
+                handle(id, (String) method, Json.object(message.get("params")));
+            } catch (InvalidParams error) {
+                if (id != null) send(error(id, -32602, error.getMessage()));
+            } catch (RuntimeException error) {
+                if (id != null) send(error(id, -32603, "Internal error: " + error));
+            }
+        }
+    }
+
+    private void handle(Object id, String method, Map<String, Object> params) throws IOException {
+        switch (method) {
+            case "initialize":
+                respond(id, Json.map("capabilities", Json.map("textDocumentSync", 2),
+                        "serverInfo", Json.map("name", "jlox", "version", Lox.VERSION)));
+                break;
+            case "shutdown":
+                shutdown = true;
+                respond(id, null);
+                break;
+            case "textDocument/didOpen": {
+                Map<String, Object> document = Json.object(params.get("textDocument"));
+                String uri = string(document, "uri");
+                documents.put(uri, new IncrementalDocument(string(document, "text")));
+                publish(uri);
+                break;
+            }
+            case "textDocument/didChange": {
+                String uri = string(Json.object(params.get("textDocument")), "uri");
+                IncrementalDocument document = documents.get(uri);
+                if (document == null) break;
+                // All of them are checked first, so a bad one doesn't leave the document half changed
+                List<?> changes = list(params, "contentChanges");
+                for (Object change : changes) check(Json.object(change));
+                for (Object change : changes) {
+                    document = change(uri, document, Json.object(change));
+                }
+                publish(uri);
+                break;
+            }
+            case "textDocument/didClose": {
+                String uri = string(Json.object(params.get("textDocument")), "uri");
+                documents.remove(uri);
+                send(Json.map("jsonrpc", "2.0", "method", "textDocument/publishDiagnostics",
+                        "params", Json.map("uri", uri, "diagnostics", new ArrayList<>())));
+                break;
+            }
+            default:
+                // Notifications we don't know about are ignored, requests get an error
+                if (id != null) send(error(id, -32601, "Unhandled method " + method));
+        }
+    }
+
+    // A change either has a range or replaces the whole text
+    private static void check(Map<String, Object> change) {
+        string(change, "text");
+        if (!change.containsKey("range")) return;
+
+        Map<String, Object> range = Json.object(change.get("range"));
+        for (String end : new String[] {"start", "end"}) {
+            Map<String, Object> position = Json.object(range.get(end));
+            integer(position, "line");
+            integer(position, "character");
+        }
+    }
+
+    private IncrementalDocument change(String uri, IncrementalDocument document, Map<String, Object> change) {
+        String text = string(change, "text");
+        if (!change.containsKey("range")) {
+            IncrementalDocument replaced = new IncrementalDocument(text);
+            documents.put(uri, replaced);
+            return replaced;
+        }
+
+        Map<String, Object> range = Json.object(change.get("range"));
+        int start = offset(document, Json.object(range.get("start")));
+        int end = offset(document, Json.object(range.get("end")));
+        document.edit(start, Math.max(0, end - start), text);
+        return document;
+    }
+
+    // A character past the end of its line means the end of the line, as the protocol says
+    private static int offset(IncrementalDocument document, Map<String, Object> position) {
+        int line = integer(position, "line");
+        int character = Math.max(0, integer(position, "character"));
+        int start = document.lineStart(line);
+        return start + Math.min(character, document.lineEnd(line) - start);
+    }
+
+    private static String string(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof String)) throw new InvalidParams("Expected a string for " + key + ".");
+        return (String) value;
+    }
+
+    private static int integer(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof Number)) throw new InvalidParams("Expected a number for " + key + ".");
+        return ((Number) value).intValue();
+    }
+
+    private static List<?> list(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof List)) throw new InvalidParams("Expected an array for " + key + ".");
+        return (List<?>) value;
+    }
+
+    private static Map<String, Object> error(Object id, int code, String message) {
+        return Json.map("jsonrpc", "2.0", "id", id, "error", Json.map("code", code, "message", message));
+    }
+
+    private void publish(String uri) throws IOException {
+        List<Object> diagnostics = new ArrayList<>();
+        for (ErrorReporter.Diagnostic error : documents.get(uri).diagnostics()) {
+            // The protocol counts lines and characters from 0, the reporter from 1
+            Map<String, Object> start = Json.map("line", error.line - 1, "character", error.column - 1);
+            Map<String, Object> end = Json.map("line", error.line - 1, "character", error.column);
+            diagnostics.add(Json.map("range", Json.map("start", start, "end", end),
+                    "severity", 1, "source", "lox", "message", "Error" + error.where + ": " + error.message));
+        }
+        send(Json.map("jsonrpc", "2.0", "method", "textDocument/publishDiagnostics",
+                "params", Json.map("uri", uri, "diagnostics", diagnostics)));
+    }
+
+    private void respond(Object id, Object result) throws IOException {
+        send(Json.map("jsonrpc", "2.0", "id", id, "result", result));
+    }
+
+    // Messages are a Content-Length header, an empty line and that many bytes of JSON
+    private String read() throws IOException {
+        int length = -1;
+        for (;;) {
+            String header = readLine();
+            if (header == null) return null;
+            if (header.isEmpty()) break;
+
+            // Searched for rather than matched at the start, so after a message without one the body
+            // in front of the next header is skipped and the server is back in step
+            int at = header.toLowerCase(Locale.ROOT).lastIndexOf("content-length:");
+            if (at >= 0) {
+                try {
+                    length = Integer.parseInt(header.substring(at + "content-length:".length()).trim());
+                } catch (NumberFormatException error) {
+                    length = -1;
+                }
+            }
+        }
+        if (length < 0) throw new IllegalArgumentException("Message without a Content-Length.");
+
+        byte[] body = in.readNBytes(length);
+        if (body.length < length) return null;
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (;;) {
+            int c = in.read();
+            if (c == -1) return null;
+            if (c == '\n') break;
+            if (c != '\r') line.write(c);
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private void send(Map<String, Object> message) throws IOException {
+        byte[] body = Json.write(message).getBytes(StandardCharsets.UTF_8);
+        out.write(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    // Params of the wrong shape, answered with an error rather than taking the server down
+    private static final class InvalidParams extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        InvalidParams(String message) {
+            super(message);
+        }
+    }
+
+    // Just enough JSON for the protocol. Objects are Maps, arrays Lists and numbers Doubles.
+    static final class Json {
+        private final String text;
+        private int current = 0;
+
+        private Json(String text) {
+            this.text = text;
+        }
+
+        static Object parse(String text) {
+            Json json = new Json(text);
+            Object value = json.value();
+            json.skipWhitespace();
+            if (json.current != text.length()) throw json.error();
+            return value;
+        }
+
+        // Missing objects read as empty ones, which saves a null check for every optional field
+        @SuppressWarnings("unchecked")
+        static Map<String, Object> object(Object value) {
+            if (value instanceof Map) return (Map<String, Object>) value;
+            return new HashMap<>();
+        }
+
+        // Keys and values, alternating
+        static Map<String, Object> map(Object... entries) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < entries.length; i += 2) {
+                map.put((String) entries[i], entries[i + 1]);
+            }
+            return map;
+        }
+
+        static String write(Object value) {
+            StringBuilder text = new StringBuilder();
+            write(value, text);
+            return text.toString();
+        }
+
+        private static void write(Object value, StringBuilder text) {
+            if (value == null || value instanceof Boolean) {
+                text.append(value);
+            } else if (value instanceof Number) {
+                double number = ((Number) value).doubleValue();
+                // Ids and positions are integers, and must not come back as 1.0
+                if (number == (long) number) {
+                    text.append((long) number);
+                } else {
+                    text.append(number);
+                }
+            } else if (value instanceof String) {
+                writeString((String) value, text);
+            } else if (value instanceof Map) {
+                text.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    if (!first) text.append(',');
+                    first = false;
+                    writeString((String) entry.getKey(), text);
+                    text.append(':');
+                    write(entry.getValue(), text);
+                }
+                text.append('}');
+            } else {
+                text.append('[');
+                boolean first = true;
+                for (Object element : (List<?>) value) {
+                    if (!first) text.append(',');
+                    first = false;
+                    write(element, text);
+                }
+                text.append(']');
+            }
+        }
+
+        private static void writeString(String value, StringBuilder text) {
+            text.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': text.append("\\\""); break;
+                    case '\\': text.append("\\\\"); break;
+                    case '\n': text.append("\\n"); break;
+                    case '\r': text.append("\\r"); break;
+                    case '\t': text.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            text.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            text.append(c);
+                        }
+                }
+            }
+            text.append('"');
+        }
+
+        private Object value() {
+            skipWhitespace();
+            if (current == text.length()) throw error();
+
+            char c = text.charAt(current);
+            switch (c) {
+                case '{': return parseObject();
+                case '[': return parseArray();
+                case '"': return parseString();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default: return parseNumber();
+            }
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            current++;
+            skipWhitespace();
+            if (match('}')) return object;
+
+            do {
+                skipWhitespace();
+                if (current == text.length() || text.charAt(current) != '"') throw error();
+                String key = parseString();
+                skipWhitespace();
+                if (!match(':')) throw error();
+                object.put(key, value());
+                skipWhitespace();
+            } while (match(','));
+
+            if (!match('}')) throw error();
+            return object;
+        }
+
+        private List<Object> parseArray() {
+            List<Object> array = new ArrayList<>();
+            current++;
+            skipWhitespace();
+            if (match(']')) return array;
+
+            do {
+                array.add(value());
+                skipWhitespace();
+            } while (match(','));
+
+            if (!match(']')) throw error();
+            return array;
+        }
+
+        private String parseString() {
+            StringBuilder value = new StringBuilder();
+            current++;
+            for (;;) {
+                if (current >= text.length()) throw error();
+                char c = text.charAt(current++);
+                if (c == '"') return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+
+                if (current >= text.length()) throw error();
+                char escaped = text.charAt(current++);
+                switch (escaped) {
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'u':
+                        if (current + 4 > text.length()) throw error();
+                        value.append((char) Integer.parseInt(text.substring(current, current + 4), 16));
+                        current += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+        }
+
+        private Double parseNumber() {
+            int start = current;
+            while (current < text.length() && "+-0123456789.eE".indexOf(text.charAt(current)) >= 0) current++;
+            if (start == current) throw error();
+            return Double.parseDouble(text.substring(start, current));
+        }
+
+        private Object literal(String word, Object value) {
+            if (!text.startsWith(word, current)) throw error();
+            current += word.length();
+            return value;
+        }
+
+        private boolean match(char expected) {
+            if (current < text.length() && text.charAt(current) == expected) {
+                current++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (current < text.length() && Character.isWhitespace(text.charAt(current))) current++;
+        }
+
+        private IllegalArgumentException error() {
+            return new IllegalArgumentException("Malformed JSON at " + current + ".");
+        }
+    }
+}
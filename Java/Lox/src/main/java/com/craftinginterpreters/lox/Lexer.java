@@ -0,0 +1,14 @@
+package com.craftinginterpreters.lox;
+
+// What the Parser needs from a scanner. There are two: the hand written Scanner
+// and the TableScanner, picked with --scanner=switch|table. Both must produce the same tokens and errors.
+interface Lexer {
+    // Scans the whole input, the buffer ends with the EOF token
+    TokenBuffer scanTokens();
+
+    // The buffer scanNext() adds to
+    TokenBuffer tokens();
+
+    // Adds at least one more token to the buffer, unless the EOF token has already been added
+    void scanNext();
+}
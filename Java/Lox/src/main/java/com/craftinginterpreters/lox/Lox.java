@@ -1,96 +1,250 @@
 package com.craftinginterpreters.lox;
 
+import com.sun.net.httpserver.HttpServer;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
 public class Lox {
-    // Object to store the interpreter and run the commands
-    // We make it static so that when used in REPL, it uses same instance of the interpreter
-    // This will help to store global variables, those variables should persist  the session
-    private static final Interpreter interpreter = new Interpreter();
+    // Part of the AstCache key, so cached trees from another version are never used
+    static final String VERSION = "1.0";
+
+    // The command line runs everything in one context, so in the REPL the globals persist across lines
+    private final LoxContext context;
+
+    // --stream runs each top level declaration of a script as soon as it is parsed
+    private final boolean stream;
 
-    // This boolean is used to confirm if error occurred while running the program
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    // --cache keeps parsed scripts in .loxcache next to the script, --cache=dir puts them in dir
+    private final String cache;
+
+    // --profile samples the running statements and writes them to profile.folded, --profile=file elsewhere
+    private final Profiler profiler;
+    private final String profileFile;
+
+    private Lox(LoxContext context, boolean stream, String cache, String profileFile) {
+        this.context = context;
+        this.stream = stream;
+        this.cache = cache;
+        this.profileFile = profileFile;
+        this.profiler = profileFile != null ? new Profiler() : null;
+        context.profiler = profiler;
+    }
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
+        String script = null;
+        // Which backend runs the program, selected with --engine=interpreter|vm|nodes|jvm|closures
+        String engine = "interpreter";
+        // Which scanner makes the tokens, selected with --scanner=switch|table
+        String scanner = "switch";
+        // --optimize runs the Optimizer before the engine, --dump-ast prints the tree before and after it
+        boolean optimize = false;
+        boolean dumpAst = false;
+        boolean stream = false;
+        String cache = null;
+        String profile = null;
+        // --metrics=port serves the engine's Metrics at http://127.0.0.1:port/metrics while the script runs
+        int metricsPort = -1;
+        // --prelude=file runs file before the script or the REPL
+        String prelude = null;
+        // --lsp serves the Language Server Protocol on stdin and stdout instead of running anything
+        boolean lsp = false;
+
+        for (String arg : args) {
+            if (arg.equals("--lsp")) {
+                lsp = true;
+            } else if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            } else if (arg.startsWith("--scanner=")) {
+                scanner = arg.substring("--scanner=".length());
+            } else if (arg.equals("--optimize")) {
+                optimize = true;
+            } else if (arg.equals("--dump-ast")) {
+                dumpAst = true;
+            } else if (arg.equals("--stream")) {
+                stream = true;
+            } else if (arg.equals("--cache")) {
+                cache = "";
+            } else if (arg.startsWith("--cache=")) {
+                cache = arg.substring("--cache=".length());
+            } else if (arg.equals("--profile")) {
+                profile = "profile.folded";
+            } else if (arg.startsWith("--profile=")) {
+                profile = arg.substring("--profile=".length());
+            } else if (arg.startsWith("--prelude=")) {
+                prelude = arg.substring("--prelude=".length());
+            } else if (arg.startsWith("--metrics=")) {
+                try {
+                    metricsPort = Integer.parseInt(arg.substring("--metrics=".length()));
+                } catch (NumberFormatException error) {
+                    usage();
+                }
+            } else if (arg.startsWith("--") || script != null) {
+                usage();
+            } else {
+                script = arg;
+            }
+        }
+
+        if (lsp) {
+            if (script != null) usage();
+            System.exit(new LanguageServer(System.in, System.out).run());
+        }
+
+        LoxEngine loxEngine = null;
+        try {
+            loxEngine = new LoxEngine(engine, scanner, optimize, dumpAst);
+        } catch (IllegalArgumentException error) {
+            usage();
+        }
+
+        // The other engines have no statements left to sample by the time they run
+        if (profile != null && !engine.equals("interpreter")) {
+            System.err.println("--profile needs --engine=interpreter.");
             System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        }
+
+        // Only on the loopback interface, the counters are nobody else's business
+        HttpServer metrics = null;
+        if (metricsPort >= 0) {
+            metrics = loxEngine.metrics().serve(new InetSocketAddress("127.0.0.1", metricsPort));
+        }
+
+        Lox lox = new Lox(loxEngine.newContext(), stream, cache, profile);
+        if (lox.profiler != null) lox.profiler.start();
+        if (prelude != null) lox.runPrelude(prelude);
+        if (script != null) {
+            lox.runFile(script);
         } else {
-            runPrompt();
+            lox.runPrompt();
         }
+
+        // The server's thread would keep the JVM alive
+        if (metrics != null) metrics.stop(0);
     }
 
-    private static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+    private static void usage() {
+        System.out.println("Usage: jlox [--engine=interpreter|vm|nodes|jvm|closures] [--scanner=switch|table] [--optimize] [--dump-ast] [--stream] [--cache[=dir]] [--profile[=file]] [--metrics=port] [--prelude=file] [--lsp] [script]");
+        System.exit(64);
+    }
+
+    private void runFile(String path) throws IOException {
+        Path script = Paths.get(path);
+        Charset charset = Charset.defaultCharset();
+        context.reporter.script = path;
+
+        // Streaming runs declarations before the whole file is parsed, so there is no tree to cache
+        if (cache != null && !stream) {
+            runCached(script, charset);
+        } else {
+            runFile(script, charset);
+        }
+
+        if (profiler != null) {
+            List<String> source = null;
+            try {
+                source = Files.readAllLines(script, charset);
+            } catch (IOException e) {
+                // The summary just goes without the source text
+            }
+            stopProfiler(source);
+        }
 
         // Indicate an error in the exit code
-        if (hadError) System.exit(65);
-        if (hadRuntimeError) System.exit(70);
+        if (context.hadError()) System.exit(65);
+        if (context.hadRuntimeError()) System.exit(70);
+    }
+
+    private void runFile(Path script, Charset charset) throws IOException {
+        // The file is memory mapped and scanned as the parser asks for tokens,
+        // so we never hold a copy of the whole file or a list of all its tokens
+        try (MappedFileSource source = new MappedFileSource(script, charset)) {
+            Lexer lexer = context.lexer(source);
+            if (stream) {
+                context.runStreaming(lexer);
+            } else {
+                Program program = context.parse(lexer);
+                if (program != null) context.run(program);
+            }
+        }
+    }
+
+    // Runs the tree from the AstCache when the script hasn't changed, otherwise parses it and
+    // stores the tree for next time. Scripts with syntax errors are never stored.
+    private void runCached(Path script, Charset charset) throws IOException {
+        Path directory = cache.isEmpty()
+                ? script.toAbsolutePath().resolveSibling(".loxcache")
+                : Paths.get(cache);
+        AstCache astCache = new AstCache(directory);
+        byte[] key = astCache.key(script, charset);
+
+        List<Stmt> statements = astCache.load(key);
+        if (statements == null) {
+            try (MappedFileSource source = new MappedFileSource(script, charset)) {
+                statements = context.parseStatements(context.lexer(source));
+            }
+            if (context.hadError()) return;
+            astCache.store(key, statements);
+        }
+
+        context.run(context.prepare(statements));
+    }
+
+    // Restores the globals the prelude left behind from a Snapshot when the prelude hasn't changed
+    // since it was last run, otherwise runs it and snapshots its globals for next time. The snapshots
+    // go where --cache puts the cached trees, by default .loxcache next to the prelude.
+    private void runPrelude(String path) throws IOException {
+        Path prelude = Paths.get(path);
+        Charset charset = Charset.defaultCharset();
+        Path directory = cache == null || cache.isEmpty()
+                ? prelude.toAbsolutePath().resolveSibling(".loxcache")
+                : Paths.get(cache);
+        Snapshot snapshot = new Snapshot(directory, prelude, charset);
+        if (snapshot.restore(context)) return;
+
+        context.reporter.script = path;
+        long printed = context.printed();
+        runFile(prelude, charset);
+        if (context.hadError()) System.exit(65);
+        if (context.hadRuntimeError()) System.exit(70);
+
+        // Restoring the globals wouldn't print it again
+        if (context.printed() == printed) snapshot.store(context.globals());
     }
 
-    private static void runPrompt() throws IOException {
+    private void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
+        context.reporter.script = "<repl>";
 
         for (; ; ) {
             System.out.print("> ");
             String line = reader.readLine();
 
             if (line == null) break;
-            run(line);
+            // Tasks spawned on a line keep running in the background while we read the next one
+            Program program = context.parse(line);
+            if (program != null) context.start(program);
 
             // we reset the error in this mode for each line
-            hadError = false;
+            context.flush();
+            context.clearErrors();
         }
-    }
-
-    private static void run(String source) {
-        // Sending the file to scanner and then reading tokens
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
 
-        // Create a AST for Expression
-        Parser p = new Parser(tokens);
-        List<Stmt> statements = p.parse();
-
-        // Stop if there was a syntax error.
-        if(hadError) return;
-
-        interpreter.interpret(statements);
-    }
-
-    // Function to call when error occurs
-    static void error(int line, String message) {
-        report(line, "", message);
+        if (profiler != null) stopProfiler(null);
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
-        }
-    }
-
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() +
-                "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
-    }
-
-    private static void report(int line, String where, String message) {
-        System.err.println("[Line " + line + "] Error" + where + ": " + message);
-
-        hadError = true;
+    private void stopProfiler(List<String> source) throws IOException {
+        profiler.stop();
+        profiler.write(Paths.get(profileFile));
+        profiler.printSummary(System.err, 10, source);
+        System.err.println("Stacks written to " + profileFile);
     }
 }
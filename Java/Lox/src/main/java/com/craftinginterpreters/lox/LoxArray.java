@@ -0,0 +1,134 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Array value, made by [a, b, c] and grown with push(). Elements are read and written with
+// array[index], which takes constant time.
+//
+// While every element is a number they are kept unboxed in a double[], which takes 8 bytes an
+// element where an Object[] of Doubles takes a reference and a 16 byte Double. The first element
+// which isn't a number widens the array to an Object[] for good, it never goes back.
+//
+// Tasks can share arrays, so access is synchronized, which is cheap while only one task uses it.
+// Like channels and tasks, two arrays are only equal if they are the same array.
+final class LoxArray {
+    private static final int MIN_CAPACITY = 8;
+
+    // Exactly one of them is in use, numbers until the array is widened
+    private double[] numbers;
+    private Object[] values;
+    private int size;
+
+    LoxArray(int capacity) {
+        numbers = new double[Math.max(capacity, MIN_CAPACITY)];
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized Object get(Token bracket, Object index) {
+        int i = checkIndex(bracket, index);
+        if (numbers != null) return numbers[i];
+        return values[i];
+    }
+
+    synchronized void set(Token bracket, Object index, Object value) {
+        int i = checkIndex(bracket, index);
+        store(i, value);
+    }
+
+    // Returns the new size
+    synchronized int push(Object value) {
+        int capacity = numbers != null ? numbers.length : values.length;
+        if (size == capacity) {
+            // The largest array the JVM allows
+            if (capacity >= Integer.MAX_VALUE - 8) throw new OutOfMemoryError("Array too large.");
+            capacity = (int) Math.min((long) capacity * 2, Integer.MAX_VALUE - 8);
+            if (numbers != null) {
+                numbers = Arrays.copyOf(numbers, capacity);
+            } else {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+        store(size++, value);
+        return size;
+    }
+
+    private void store(int i, Object value) {
+        if (numbers != null) {
+            if (value instanceof Double) {
+                numbers[i] = (double) value;
+                return;
+            }
+            widen();
+        }
+        values[i] = value;
+    }
+
+    private void widen() {
+        values = new Object[numbers.length];
+        for (int i = 0; i < size; i++) {
+            values[i] = numbers[i];
+        }
+        numbers = null;
+    }
+
+    private int checkIndex(Token bracket, Object index) {
+        if (!(index instanceof Double)) throw new RuntimeError(bracket, "Array index must be a number.");
+        double number = (double) index;
+        if (number != Math.floor(number)) throw new RuntimeError(bracket, "Array index must be a whole number.");
+        if (number < 0 || number >= size) throw new RuntimeError(bracket, "Array index out of bounds.");
+        return (int) number;
+    }
+
+    // A copy of the elements, boxed
+    private synchronized Object[] elements() {
+        Object[] elements = new Object[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = numbers != null ? (Object) numbers[i] : values[i];
+        }
+        return elements;
+    }
+
+    // [1, two, [3]] like stringify prints the elements. An array which contains itself is printed
+    // as [...] where it comes round again. The elements are copied first, so printing never holds
+    // the lock of more than one array (or map) at a time.
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        append(text, new IdentityHashMap<>());
+        return text.toString();
+    }
+
+    void append(StringBuilder text, Map<Object, Boolean> open) {
+        if (open.containsKey(this)) {
+            text.append("[...]");
+            return;
+        }
+        open.put(this, true);
+
+        text.append('[');
+        Object[] elements = elements();
+        for (int i = 0; i < elements.length; i++) {
+            if (i > 0) text.append(", ");
+            append(text, elements[i], open);
+        }
+        text.append(']');
+
+        open.remove(this);
+    }
+
+    // A value in an array or a map, open holds the arrays and maps it is in
+    static void append(StringBuilder text, Object value, Map<Object, Boolean> open) {
+        if (value instanceof LoxArray) {
+            ((LoxArray) value).append(text, open);
+        } else if (value instanceof LoxMap) {
+            ((LoxMap) value).append(text, open);
+        } else {
+            text.append(Interpreter.stringify(value));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.craftinginterpreters.lox;
+
+// Anything which can be called from Lox. For now those are only the natives, see Natives.
+interface LoxCallable {
+    int arity();
+
+    // paren is the call's closing parenthesis, runtime errors are reported on its line
+    Object call(Token paren, Object[] arguments);
+}
@@ -0,0 +1,34 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+// Bounded channel between tasks, made by the channel(capacity) native.
+// send() blocks while the channel is full and receive() while it is empty. A capacity of 0 makes
+// every send wait for a matching receive. Handing a value over also makes everything the sender
+// wrote before it visible to the receiver.
+class LoxChannel {
+    // The queues don't take null, so nil travels as this marker
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    LoxChannel(int capacity) {
+        this.queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value) throws InterruptedException {
+        queue.put(value == null ? NIL : value);
+    }
+
+    Object receive() throws InterruptedException {
+        Object value = queue.take();
+        return value == NIL ? null : value;
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
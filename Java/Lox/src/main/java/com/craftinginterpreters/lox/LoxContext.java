@@ -0,0 +1,259 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// One isolated Lox world: its own globals, error state and output streams.
+// A context keeps its globals between runs (that is what the REPL uses), but it is not thread safe itself,
+// only one thread may use it at a time. To run scripts in parallel give each thread its own context,
+// they can all run the same Program.
+public final class LoxContext {
+    private final LoxEngine engine;
+    private final OutputSink out;
+    final ErrorReporter reporter;
+
+    // Only the backend selected by the engine is ever created
+    private Interpreter interpreter;
+    private VM vm;
+    private NodeInterpreter nodeInterpreter;
+    private JvmInterpreter jvmInterpreter;
+    private ClosureInterpreter closureInterpreter;
+
+    // Set by --profile, only the tree walking interpreter reports to it
+    Profiler profiler;
+
+    LoxContext(LoxEngine engine, PrintStream out, PrintStream err) {
+        this.engine = engine;
+        this.out = new OutputSink(out);
+        this.reporter = new ErrorReporter(err, this.out);
+        this.reporter.metrics = engine.metrics();
+    }
+
+    // Returns null if the source has syntax errors, they are written to this context's error stream
+    public Program parse(String source) {
+        return parse(lexer(Source.of(source)));
+    }
+
+    // Returns once the program and every task it spawned have finished
+    public void run(Program program) {
+        LoxEvents.Execute event = LoxEvents.beginExecute();
+        long start = System.nanoTime();
+        execute(program.statements);
+        awaitTasks();
+        engine.metrics().run(System.nanoTime() - start);
+        LoxEvents.endExecute(event, reporter.script, engine.engine, program.statements.size());
+        flush();
+    }
+
+    // Like run() but leaves the spawned tasks running, the REPL doesn't wait for them between lines
+    void start(Program program) {
+        LoxEvents.Execute event = LoxEvents.beginExecute();
+        long start = System.nanoTime();
+        execute(program.statements);
+        engine.metrics().run(System.nanoTime() - start);
+        LoxEvents.endExecute(event, reporter.script, engine.engine, program.statements.size());
+    }
+
+    // Parses and runs the source, the globals it defines stay around for the next eval
+    public void eval(String source) {
+        Program program = parse(source);
+        if (program != null) run(program);
+    }
+
+    // Printed output is buffered, run() and eval() flush it when they return, start() doesn't
+    public void flush() {
+        out.flush();
+    }
+
+    public boolean hadError() {
+        return reporter.hadError;
+    }
+
+    public boolean hadRuntimeError() {
+        return reporter.hadRuntimeError;
+    }
+
+    public void clearErrors() {
+        reporter.hadError = false;
+        reporter.hadRuntimeError = false;
+    }
+
+    Lexer lexer(Source source) {
+        if (engine.scanner.equals("table")) return new TableScanner(source, reporter);
+        return new Scanner(source, reporter);
+    }
+
+    Program parse(Lexer lexer) {
+        int errors = reporter.errors;
+        List<Stmt> statements = parseStatements(lexer);
+
+        // Stop if there was a syntax error.
+        if (reporter.errors != errors) return null;
+
+        return prepare(statements);
+    }
+
+    // Just the parsing, as one lox.Parse event. The statements are only usable if it didn't report
+    // any errors.
+    List<Stmt> parseStatements(Lexer lexer) {
+        int errors = reporter.errors;
+        LoxEvents.Parse event = LoxEvents.beginParse();
+
+        // Create a AST for Expression, the parser pulls the tokens from the lexer
+        List<Stmt> statements = new Parser(lexer, reporter).parse();
+        reporter.flushDiagnostics();
+
+        LoxEvents.endParse(event, reporter.script, lexer.tokens().end(), statements.size(), reporter.errors - errors);
+        return statements;
+    }
+
+    // Optimizing and resolving are the last steps which touch the tree, after this it is only read
+    Program prepare(List<Stmt> statements) {
+        LoxEvents.Resolve event = LoxEvents.beginResolve();
+
+        if (engine.dumpAst) out.print(new AstPrinter().print(statements));
+
+        if (engine.optimize) {
+            statements = new Optimizer().optimize(statements);
+
+            if (engine.dumpAst) {
+                out.print("-- optimized --\n");
+                out.print(new AstPrinter().print(statements));
+            }
+        }
+
+        // Work out where every local variable lives before running anything
+        new Resolver().resolve(statements);
+        LoxEvents.endResolve(event, reporter.script, statements.size());
+        return new Program(statements);
+    }
+
+    // Each declaration is run as soon as it is parsed and then dropped, so memory stays flat however
+    // long the script is. Unlike run(), the declarations before a syntax error have already run
+    // by the time it is found, after that we only keep parsing to report the remaining errors.
+    // The whole run is one lox.Execute event, parsing included.
+    void runStreaming(Lexer lexer) {
+        LoxEvents.Execute event = LoxEvents.beginExecute();
+        long start = System.nanoTime();
+        Parser p = new Parser(lexer, reporter);
+        int statements = 0;
+
+        while (p.hasNext()) {
+            Stmt statement = p.next();
+            statements++;
+
+            if (reporter.hadError || reporter.hadRuntimeError) continue;
+            execute(prepare(List.of(statement)).statements);
+        }
+        reporter.flushDiagnostics();
+
+        awaitTasks();
+        engine.metrics().run(System.nanoTime() - start);
+        LoxEvents.endExecute(event, reporter.script, engine.engine, statements);
+        flush();
+    }
+
+    private void awaitTasks() {
+        // The vm has no spawn
+        switch (engine.engine) {
+            case "nodes":
+                if (nodeInterpreter != null) nodeInterpreter.awaitTasks();
+                break;
+            case "jvm":
+                if (jvmInterpreter != null) jvmInterpreter.awaitTasks();
+                break;
+            case "closures":
+                if (closureInterpreter != null) closureInterpreter.awaitTasks();
+                break;
+            case "interpreter":
+                if (interpreter != null) interpreter.awaitTasks();
+                break;
+        }
+    }
+
+    private void execute(List<Stmt> statements) {
+        switch (engine.engine) {
+            case "vm":
+                int errors = reporter.errors;
+                Chunk chunk = new Compiler(reporter).compile(statements);
+                reporter.flushDiagnostics();
+                if (reporter.errors != errors) return;
+
+                vm().interpret(chunk);
+                break;
+            case "nodes":
+                nodeInterpreter().interpret(statements);
+                break;
+            case "jvm":
+                jvmInterpreter().interpret(statements);
+                break;
+            case "closures":
+                closureInterpreter().interpret(statements);
+                break;
+            default:
+                interpreter().interpret(statements);
+                break;
+        }
+    }
+
+    // A copy of the engine's globals with nil as null, for Snapshot
+    Map<String, Object> globals() {
+        if (engine.engine.equals("vm")) return new HashMap<>(vm().globals());
+        return environment().globals();
+    }
+
+    // Defines a global like a var statement would, for Snapshot
+    void define(String name, Object value) {
+        if (engine.engine.equals("vm")) {
+            vm().globals().put(name, value);
+        } else {
+            environment().define(name, value);
+        }
+    }
+
+    // How often the programs run so far printed
+    long printed() {
+        return out.printed();
+    }
+
+    // The globals of the engines other than the vm
+    private Environment environment() {
+        switch (engine.engine) {
+            case "nodes": return nodeInterpreter().globals;
+            case "jvm": return jvmInterpreter().globals;
+            case "closures": return closureInterpreter().globals;
+            default: return interpreter().globals;
+        }
+    }
+
+    private VM vm() {
+        if (vm == null) vm = new VM(out, reporter);
+        return vm;
+    }
+
+    private NodeInterpreter nodeInterpreter() {
+        if (nodeInterpreter == null) nodeInterpreter = new NodeInterpreter(out, reporter);
+        return nodeInterpreter;
+    }
+
+    private JvmInterpreter jvmInterpreter() {
+        if (jvmInterpreter == null) jvmInterpreter = new JvmInterpreter(out, reporter);
+        return jvmInterpreter;
+    }
+
+    private ClosureInterpreter closureInterpreter() {
+        if (closureInterpreter == null) closureInterpreter = new ClosureInterpreter(out, reporter);
+        return closureInterpreter;
+    }
+
+    private Interpreter interpreter() {
+        if (interpreter == null) {
+            interpreter = new Interpreter(new Environment(), out, reporter);
+            interpreter.collect(engine.metrics());
+            if (profiler != null) interpreter.profile(profiler);
+        }
+        return interpreter;
+    }
+}
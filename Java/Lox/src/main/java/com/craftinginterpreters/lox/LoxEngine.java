@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+// Entry point for embedding Lox. An engine only holds the settings (which backend, which scanner,
+// whether to optimize) and never changes, so one engine can be shared by any number of threads.
+// Everything a running script touches lives in a LoxContext:
+//
+//   LoxEngine engine = new LoxEngine("closures", "switch", true);
+//   Program program = engine.newContext().parse(source);
+//   executor.submit(() -> engine.newContext(out, err).run(program));
+public final class LoxEngine {
+    final String engine;
+    final String scanner;
+    final boolean optimize;
+    // Only used by the command line, prints the tree before and after optimizing to the context's output
+    final boolean dumpAst;
+    // Shared by every context of this engine
+    private final Metrics metrics = new Metrics();
+
+    public LoxEngine() {
+        this("interpreter", "switch", false);
+    }
+
+    // engine is one of interpreter, vm, nodes, jvm or closures and scanner is switch or table
+    public LoxEngine(String engine, String scanner, boolean optimize) {
+        this(engine, scanner, optimize, false);
+    }
+
+    LoxEngine(String engine, String scanner, boolean optimize, boolean dumpAst) {
+        if (!engine.equals("interpreter") && !engine.equals("vm") && !engine.equals("nodes")
+                && !engine.equals("jvm") && !engine.equals("closures")) {
+            throw new IllegalArgumentException("Unknown engine '" + engine + "'.");
+        }
+        if (!scanner.equals("switch") && !scanner.equals("table")) {
+            throw new IllegalArgumentException("Unknown scanner '" + scanner + "'.");
+        }
+
+        this.engine = engine;
+        this.scanner = scanner;
+        this.optimize = optimize;
+        this.dumpAst = dumpAst;
+    }
+
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    // A context writing to the process' stdout and stderr
+    public LoxContext newContext() {
+        return newContext(System.out, System.err);
+    }
+
+    public LoxContext newContext(PrintStream out, PrintStream err) {
+        return new LoxContext(this, out, err);
+    }
+}
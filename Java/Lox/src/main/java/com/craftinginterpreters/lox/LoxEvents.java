@@ -0,0 +1,168 @@
+package com.craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight Recorder events for the phases of running a script, so a recording of a slow or failing
+// run shows where the time went next to the JVM's own events:
+//
+//   java -XX:StartFlightRecording=filename=lox.jfr -cp target/classes com.craftinginterpreters.lox.Lox script.lox
+//   jfr print --events 'lox.*' lox.jfr
+//
+// Loading the first event class starts up the recorder's machinery, which takes longer than running
+// most scripts. So nothing touches the event classes until Flight Recorder is running (from the
+// command line or a later jcmd JFR.start), the begin and end methods below just return null until then.
+final class LoxEvents {
+    private LoxEvents() {
+    }
+
+    private static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    static Scan beginScan() {
+        if (!recording()) return null;
+        Scan event = new Scan();
+        event.begin();
+        return event;
+    }
+
+    static void endScan(Scan event, int tokens) {
+        if (event == null || !event.shouldCommit()) return;
+        event.tokens = tokens;
+        event.commit();
+    }
+
+    static Parse beginParse() {
+        if (!recording()) return null;
+        Parse event = new Parse();
+        event.begin();
+        return event;
+    }
+
+    static void endParse(Parse event, String script, int tokens, int statements, int errors) {
+        if (event == null || !event.shouldCommit()) return;
+        event.script = script;
+        event.tokens = tokens;
+        event.statements = statements;
+        event.errors = errors;
+        event.commit();
+    }
+
+    static Resolve beginResolve() {
+        if (!recording()) return null;
+        Resolve event = new Resolve();
+        event.begin();
+        return event;
+    }
+
+    static void endResolve(Resolve event, String script, int statements) {
+        if (event == null || !event.shouldCommit()) return;
+        event.script = script;
+        event.statements = statements;
+        event.commit();
+    }
+
+    static Execute beginExecute() {
+        if (!recording()) return null;
+        Execute event = new Execute();
+        event.begin();
+        return event;
+    }
+
+    static void endExecute(Execute event, String script, String engine, int statements) {
+        if (event == null || !event.shouldCommit()) return;
+        event.script = script;
+        event.engine = engine;
+        event.statements = statements;
+        event.commit();
+    }
+
+    static void runtimeError(String script, RuntimeError error) {
+        if (!recording()) return;
+        Failure event = new Failure();
+        if (!event.shouldCommit()) return;
+        event.script = script;
+        event.message = error.getMessage();
+        event.line = error.line;
+        event.commit();
+    }
+
+    @Name("lox.Scan")
+    @Label("Scan")
+    @Category("Lox")
+    @Description("Scanning a whole script up front. Normally the parser pulls tokens as it goes and lox.Parse covers scanning")
+    @StackTrace(false)
+    static class Scan extends Event {
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("lox.Parse")
+    @Label("Parse")
+    @Category("Lox")
+    @Description("Scanning and parsing a script")
+    @StackTrace(false)
+    static class Parse extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Statements")
+        int statements;
+
+        @Label("Syntax Errors")
+        int errors;
+    }
+
+    @Name("lox.Resolve")
+    @Label("Resolve")
+    @Category("Lox")
+    @Description("Optimizing (with --optimize) and resolving the parsed statements")
+    @StackTrace(false)
+    static class Resolve extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Statements")
+        int statements;
+    }
+
+    @Name("lox.Execute")
+    @Label("Execute")
+    @Category("Lox")
+    @Description("Running a program, including the time spent waiting for its tasks")
+    @StackTrace(false)
+    static class Execute extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Engine")
+        String engine;
+
+        @Label("Statements")
+        int statements;
+    }
+
+    @Name("lox.RuntimeError")
+    @Label("Runtime Error")
+    @Category("Lox")
+    @StackTrace(false)
+    static class Failure extends Event {
+        @Label("Script")
+        String script;
+
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+}
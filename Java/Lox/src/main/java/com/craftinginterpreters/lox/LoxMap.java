@@ -0,0 +1,263 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Map value, made by {key: value, ...}. Entries are read and written with map[key], a missing key
+// reads as nil. Keys are equal when Interpreter.isEqual says so: numbers by value (NaN is a key
+// like any other, 0 and -0 are different keys), strings by their characters, and arrays, maps and
+// the other objects only when they are the same one.
+//
+// Laid out like CPython's dicts: the entries are kept in flat arrays in the order they were added,
+// with each key's hash, and a separate open addressing table of entry numbers, probed linearly,
+// finds them. Number keys are stored unboxed, as their bits in numberKeys. A string key is compared
+// by reference first, and only has its characters compared when the cached hashes match. Removed
+// entries stay behind as DELETED until the table is rebuilt.
+//
+// Tasks can share maps, so access is synchronized like for LoxArray.
+final class LoxMap {
+    private static final int MIN_CAPACITY = 8;
+
+    // In keys[], for keys which aren't objects
+    private static final Object NUMBER = new Object();
+    private static final Object NIL = new Object();
+    private static final Object DELETED = new Object();
+
+    // In index[], for slots which were never used and for slots of removed entries
+    private static final int EMPTY = -1;
+    private static final int DUMMY = -2;
+
+    // Twice as long as the entry arrays, a power of two
+    private int[] index;
+    private int[] hashes;
+    private Object[] keys;
+    private long[] numberKeys;
+    private Object[] values;
+    // Entries used so far, including deleted ones
+    private int entries = 0;
+    private int size = 0;
+
+    LoxMap(int capacity) {
+        int entryCapacity = MIN_CAPACITY;
+        while (entryCapacity < capacity) entryCapacity *= 2;
+        allocate(entryCapacity);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized Object get(Object key) {
+        key = normalize(key);
+        int entry = index[find(key, hash(key))];
+        return entry >= 0 ? values[entry] : null;
+    }
+
+    synchronized boolean has(Object key) {
+        key = normalize(key);
+        return index[find(key, hash(key))] >= 0;
+    }
+
+    synchronized void put(Object key, Object value) {
+        key = normalize(key);
+        int hash = hash(key);
+        int slot = find(key, hash);
+        int entry = index[slot];
+        if (entry >= 0) {
+            values[entry] = value;
+            return;
+        }
+
+        if (entries == keys.length) {
+            // At least a third of the new entries are free. Also clears out the deleted entries,
+            // so a map which only grows by as much as it shrinks doesn't grow at all.
+            resize(Math.max(MIN_CAPACITY, Integer.highestOneBit(size + size / 2) * 2));
+            slot = find(key, hash);
+        }
+
+        entry = entries++;
+        index[slot] = entry;
+        hashes[entry] = hash;
+        if (key instanceof Double) {
+            keys[entry] = NUMBER;
+            numberKeys[entry] = Double.doubleToLongBits((double) key);
+        } else {
+            keys[entry] = key;
+        }
+        values[entry] = value;
+        size++;
+    }
+
+    // True if the key was there
+    synchronized boolean remove(Object key) {
+        key = normalize(key);
+        int slot = find(key, hash(key));
+        int entry = index[slot];
+        if (entry < 0) return false;
+
+        index[slot] = DUMMY;
+        keys[entry] = DELETED;
+        values[entry] = null;
+        size--;
+        return true;
+    }
+
+    // The keys and the values as arrays, in the order the keys were added
+    synchronized LoxArray keys() {
+        LoxArray array = new LoxArray(size);
+        for (int entry = 0; entry < entries; entry++) {
+            if (keys[entry] != DELETED) array.push(key(entry));
+        }
+        return array;
+    }
+
+    synchronized LoxArray values() {
+        LoxArray array = new LoxArray(size);
+        for (int entry = 0; entry < entries; entry++) {
+            if (keys[entry] != DELETED) array.push(values[entry]);
+        }
+        return array;
+    }
+
+    // The slot the normalized key is in, or if it isn't there the slot it would go in
+    private int find(Object key, int hash) {
+        int mask = index.length - 1;
+        int free = -1;
+
+        if (key instanceof Double) {
+            // Compared as bits, so the key never has to be boxed again
+            long bits = Double.doubleToLongBits((double) key);
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                int entry = index[slot];
+                if (entry == EMPTY) return free >= 0 ? free : slot;
+                if (entry == DUMMY) {
+                    if (free < 0) free = slot;
+                } else if (numberKeys[entry] == bits && keys[entry] == NUMBER) {
+                    return slot;
+                }
+            }
+        }
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = index[slot];
+            if (entry == EMPTY) return free >= 0 ? free : slot;
+            if (entry == DUMMY) {
+                if (free < 0) free = slot;
+                continue;
+            }
+
+            Object candidate = keys[entry];
+            if (candidate == key) return slot;
+            if (hashes[entry] == hash && candidate != NUMBER && candidate.equals(key)) {
+                return slot;
+            }
+        }
+    }
+
+    // What a key is stored and looked up as. Strings are kept flat, a Rope key would be flattened
+    // for every lookup anyway.
+    private static Object normalize(Object key) {
+        if (key == null) return NIL;
+        if (key instanceof Rope) return key.toString();
+        return key;
+    }
+
+    // Mixed like MurmurHash3's finalizer, since the table is indexed by the low bits and a whole
+    // number's Double.hashCode() only differs in its high bits
+    private static int hash(Object key) {
+        int hash;
+        if (key instanceof Double) {
+            hash = Double.hashCode((double) key);
+        } else {
+            hash = key.hashCode();
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private Object key(int entry) {
+        Object key = keys[entry];
+        if (key == NUMBER) return Double.longBitsToDouble(numberKeys[entry]);
+        if (key == NIL) return null;
+        return key;
+    }
+
+    private void allocate(int entryCapacity) {
+        index = new int[entryCapacity * 2];
+        Arrays.fill(index, EMPTY);
+        hashes = new int[entryCapacity];
+        keys = new Object[entryCapacity];
+        numberKeys = new long[entryCapacity];
+        values = new Object[entryCapacity];
+    }
+
+    // Copies the live entries, in order, into new arrays and indexes them again from their hashes
+    private void resize(int entryCapacity) {
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys;
+        long[] oldNumberKeys = numberKeys;
+        Object[] oldValues = values;
+        int oldEntries = entries;
+
+        allocate(entryCapacity);
+        entries = 0;
+        int mask = index.length - 1;
+        for (int old = 0; old < oldEntries; old++) {
+            if (oldKeys[old] == DELETED) continue;
+
+            int entry = entries++;
+            hashes[entry] = oldHashes[old];
+            keys[entry] = oldKeys[old];
+            numberKeys[entry] = oldNumberKeys[old];
+            values[entry] = oldValues[old];
+
+            int slot = hashes[entry] & mask;
+            while (index[slot] != EMPTY) slot = (slot + 1) & mask;
+            index[slot] = entry;
+        }
+    }
+
+    // Copies of the keys and values, alternating
+    private synchronized Object[] pairs() {
+        Object[] pairs = new Object[size * 2];
+        int i = 0;
+        for (int entry = 0; entry < entries; entry++) {
+            if (keys[entry] == DELETED) continue;
+            pairs[i++] = key(entry);
+            pairs[i++] = values[entry];
+        }
+        return pairs;
+    }
+
+    // {a: 1, 2: [3]} in the order the keys were added, printed like array elements
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        append(text, new IdentityHashMap<>());
+        return text.toString();
+    }
+
+    void append(StringBuilder text, Map<Object, Boolean> open) {
+        if (open.containsKey(this)) {
+            text.append("{...}");
+            return;
+        }
+        open.put(this, true);
+
+        text.append('{');
+        Object[] pairs = pairs();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) text.append(", ");
+            LoxArray.append(text, pairs[i], open);
+            text.append(": ");
+            LoxArray.append(text, pairs[i + 1], open);
+        }
+        text.append('}');
+
+        open.remove(this);
+    }
+}
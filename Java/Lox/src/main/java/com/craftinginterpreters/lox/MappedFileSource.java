@@ -0,0 +1,145 @@
+package com.craftinginterpreters.lox;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads a script by memory mapping it and decoding it a piece at a time.
+// Only a small window of decoded characters is kept: the part from the start of the token the
+// Scanner is working on up to what has been decoded so far. The file itself is never copied
+// into the heap, the OS pages it in (and out again) as the decoder walks over it. Small files are
+// read instead, a copy that size is cheaper than setting up the mapping.
+class MappedFileSource implements Source, Closeable {
+    // Files bigger than this are mapped one region after the other
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    // Files up to this size are just read. Mapping them costs more than the copy, and the first
+    // map() in a JVM spins up a lambda in the JDK, which is a good part of a small script's startup.
+    private static final int READ_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final CharsetDecoder decoder;
+
+    private ByteBuffer region;
+    private long regionStart = 0;
+
+    // window[0] is the character at offset windowStart
+    private char[] window = new char[WINDOW_SIZE];
+    private int windowStart = 0;
+    private int windowLength = 0;
+
+    private int released = 0;
+    private boolean decodedAll = false;
+
+    MappedFileSource(Path path, Charset charset) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        fileSize = channel.size();
+
+        // Bad input turns into replacement characters, same as new String(bytes, charset) did
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        mapRegion(0);
+    }
+
+    @Override
+    public boolean isAtEnd(int index) {
+        while (index >= windowStart + windowLength) {
+            if (!fill()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return window[index - windowStart];
+    }
+
+    @Override
+    public String substring(int start, int end) {
+        return new String(window, start - windowStart, end - start);
+    }
+
+    @Override
+    public void release(int index) {
+        released = index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Decodes the next piece of the file into the window, false once everything has been read
+    private boolean fill() {
+        if (decodedAll) return false;
+
+        // Move what we still need to the front, and only grow if a single token doesn't fit (long strings).
+        // There has to be room for two chars, a surrogate pair is decoded all at once or not at all.
+        int keep = released - windowStart;
+        if (keep > 0) {
+            System.arraycopy(window, keep, window, 0, windowLength - keep);
+            windowLength -= keep;
+            windowStart = released;
+        }
+        if (window.length - windowLength < 2) {
+            char[] bigger = new char[window.length * 2];
+            System.arraycopy(window, 0, bigger, 0, windowLength);
+            window = bigger;
+        }
+
+        CharBuffer out = CharBuffer.wrap(window, windowLength, window.length - windowLength);
+
+        while (out.position() == windowLength) {
+            long consumed = regionStart + region.position();
+            boolean lastRegion = regionStart + region.limit() == fileSize;
+
+            // A character can be split over two regions, the decoder leaves its bytes for the next one
+            if (!lastRegion && region.remaining() < 16) {
+                mapRegion(consumed);
+                continue;
+            }
+
+            decoder.decode(region, out, lastRegion);
+
+            if (lastRegion && !region.hasRemaining()) {
+                decoder.flush(out);
+                decodedAll = true;
+                break;
+            }
+        }
+
+        int added = out.position() - windowLength;
+        windowLength = out.position();
+        return added > 0;
+    }
+
+    private void mapRegion(long position) {
+        try {
+            long size = Math.min(REGION_SIZE, fileSize - position);
+            if (position == 0 && size <= READ_SIZE) {
+                region = ByteBuffer.allocate((int) size);
+                while (region.hasRemaining()) {
+                    if (channel.read(region) < 0) throw new EOFException("Script got shorter while reading it.");
+                }
+                region.flip();
+            } else {
+                region = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            }
+            regionStart = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
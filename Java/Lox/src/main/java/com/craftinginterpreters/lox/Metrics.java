@@ -0,0 +1,127 @@
+package com.craftinginterpreters.lox;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters for everything run by one LoxEngine, across all its contexts and their tasks.
+// They are LongAdders, so threads running scripts at the same time don't fight over a cache line.
+// The tree walking interpreter counts statements, environments and lookups in plain fields and
+// adds them here when it is done, the rest is counted once per run or per error.
+//
+//   LoxEngine engine = new LoxEngine();
+//   ... run scripts ...
+//   engine.metrics().snapshot().get("lox_statements_executed_total");
+//   engine.metrics().serve(new InetSocketAddress("127.0.0.1", 9464));   // GET /metrics
+public final class Metrics {
+    final LongAdder statements = new LongAdder();
+    final LongAdder environments = new LongAdder();
+    final LongAdder localLookups = new LongAdder();
+    final LongAdder lookupDepth = new LongAdder();
+    final LongAdder globalLookups = new LongAdder();
+    final LongAdder syntaxErrors = new LongAdder();
+    private final Map<String, LongAdder> runtimeErrors = new ConcurrentHashMap<>();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+
+    Metrics() {
+    }
+
+    void runtimeError(String message) {
+        runtimeErrors.computeIfAbsent(kind(message), k -> new LongAdder()).increment();
+    }
+
+    void run(long nanos) {
+        runs.increment();
+        runNanos.add(nanos);
+    }
+
+    // Runtime error messages mention names and numbers, the label only says what went wrong
+    private static String kind(String message) {
+        if (message.startsWith("Undefined variable")) return "undefined_variable";
+        if (message.contains("initialized before use")) return "uninitialized_variable";
+        if (message.startsWith("Operand")) return "operand_type";
+        if (message.contains("divide by Zero")) return "divide_by_zero";
+        if (message.startsWith("Can only call") || message.startsWith("Expected ")) return "call";
+        return "native";
+    }
+
+    // Every series by its name in the Prometheus output, e.g. lox_runtime_errors_total{kind="call"}
+    public Map<String, Double> snapshot() {
+        Map<String, Double> series = new TreeMap<>();
+        series.put("lox_statements_executed_total", (double) statements.sum());
+        series.put("lox_environments_created_total", (double) environments.sum());
+        series.put("lox_variable_lookups_total{scope=\"local\"}", (double) localLookups.sum());
+        series.put("lox_variable_lookups_total{scope=\"global\"}", (double) globalLookups.sum());
+        series.put("lox_variable_lookup_depth_total", (double) lookupDepth.sum());
+        series.put("lox_syntax_errors_total", (double) syntaxErrors.sum());
+        for (Map.Entry<String, LongAdder> errors : runtimeErrors.entrySet()) {
+            series.put("lox_runtime_errors_total{kind=\"" + errors.getKey() + "\"}", (double) errors.getValue().sum());
+        }
+        series.put("lox_run_duration_seconds_count", (double) runs.sum());
+        series.put("lox_run_duration_seconds_sum", runNanos.sum() / 1e9);
+        return Collections.unmodifiableMap(series);
+    }
+
+    // The snapshot in the Prometheus text exposition format
+    public String prometheus() {
+        Map<String, Double> series = snapshot();
+        StringBuilder text = new StringBuilder();
+        family(text, series, "lox_statements_executed_total", "counter",
+                "Statements run by the tree walking interpreter.");
+        family(text, series, "lox_environments_created_total", "counter",
+                "Block environments created by the tree walking interpreter.");
+        family(text, series, "lox_variable_lookups_total", "counter",
+                "Variable reads by the tree walking interpreter.");
+        family(text, series, "lox_variable_lookup_depth_total", "counter",
+                "Enclosing environments walked for local variable reads, divide by the local lookups for the average.");
+        family(text, series, "lox_syntax_errors_total", "counter",
+                "Syntax and compile errors reported.");
+        family(text, series, "lox_runtime_errors_total", "counter",
+                "Runtime errors reported, by kind.");
+        family(text, series, "lox_run_duration_seconds", "summary",
+                "Wall time of runs. Scripts include waiting for their tasks, REPL lines don't.");
+        return text.toString();
+    }
+
+    private static void family(StringBuilder text, Map<String, Double> series, String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Map.Entry<String, Double> entry : series.entrySet()) {
+            String key = entry.getKey();
+            if (!key.equals(name) && !key.startsWith(name + "{") && !key.startsWith(name + "_")) continue;
+
+            double value = entry.getValue();
+            text.append(key).append(' ');
+            if (value == Math.rint(value)) {
+                text.append((long) value);
+            } else {
+                text.append(value);
+            }
+            text.append('\n');
+        }
+    }
+
+    // Serves prometheus() at /metrics until the returned server is stopped
+    public HttpServer serve(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
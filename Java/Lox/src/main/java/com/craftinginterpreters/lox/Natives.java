@@ -0,0 +1,187 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The functions every engine defines as globals before a program runs.
+// They keep no state of their own, so the same objects are shared by all engines and contexts.
+//
+//   clock()               seconds since some fixed point, as a number
+//   sleep(milliseconds)   pauses the current task
+//   channel(capacity)     a new channel, see LoxChannel
+//   send(channel, value)  waits until the channel has room for value
+//   receive(channel)      waits for the next value in the channel
+//   join(task)            waits until a task started with spawn has finished
+//   len(value)            the number of elements of an array, entries of a map or characters of a string
+//   push(array, value)    adds value at the end of the array, returns its new length
+//   has(map, key)         whether the map has an entry for key
+//   delete(map, key)      removes the entry for key, returns whether there was one
+//   keys(map)             an array of the map's keys, in the order they were added
+//   values(map)           an array of the map's values, in the same order
+final class Natives {
+    static final Map<String, LoxCallable> FUNCTIONS = functions();
+
+    private Natives() {
+    }
+
+    static void define(Environment globals) {
+        for (Map.Entry<String, LoxCallable> function : FUNCTIONS.entrySet()) {
+            globals.define(function.getKey(), function.getValue());
+        }
+    }
+
+    private abstract static class Native implements LoxCallable {
+        private final int arity;
+
+        Native(int arity) {
+            this.arity = arity;
+        }
+
+        @Override
+        public int arity() {
+            return arity;
+        }
+
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+    }
+
+    // Natives which block, an interrupted wait ends the task with a runtime error
+    private abstract static class Blocking extends Native {
+        Blocking(int arity) {
+            super(arity);
+        }
+
+        @Override
+        public Object call(Token paren, Object[] arguments) {
+            try {
+                return block(paren, arguments);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError(paren, "Interrupted.");
+            }
+        }
+
+        abstract Object block(Token paren, Object[] arguments) throws InterruptedException;
+    }
+
+    private static Map<String, LoxCallable> functions() {
+        Map<String, LoxCallable> functions = new LinkedHashMap<>();
+
+        functions.put("clock", new Native(0) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                return System.nanoTime() / 1e9;
+            }
+        });
+
+        functions.put("sleep", new Blocking(1) {
+            @Override
+            Object block(Token paren, Object[] arguments) throws InterruptedException {
+                Thread.sleep((long) count(paren, arguments[0], "Sleep time"));
+                return null;
+            }
+        });
+
+        functions.put("channel", new Native(1) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                return new LoxChannel(count(paren, arguments[0], "Channel capacity"));
+            }
+        });
+
+        functions.put("send", new Blocking(2) {
+            @Override
+            Object block(Token paren, Object[] arguments) throws InterruptedException {
+                channel(paren, arguments[0]).send(arguments[1]);
+                return null;
+            }
+        });
+
+        functions.put("receive", new Blocking(1) {
+            @Override
+            Object block(Token paren, Object[] arguments) throws InterruptedException {
+                return channel(paren, arguments[0]).receive();
+            }
+        });
+
+        functions.put("join", new Blocking(1) {
+            @Override
+            Object block(Token paren, Object[] arguments) throws InterruptedException {
+                if (!(arguments[0] instanceof Tasks.Task)) throw new RuntimeError(paren, "Can only join a task.");
+                ((Tasks.Task) arguments[0]).join();
+                return null;
+            }
+        });
+
+        functions.put("len", new Native(1) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                if (arguments[0] instanceof LoxArray) return (double) ((LoxArray) arguments[0]).size();
+                if (arguments[0] instanceof LoxMap) return (double) ((LoxMap) arguments[0]).size();
+                // A Rope knows its length without being flattened
+                if (arguments[0] instanceof CharSequence) return (double) ((CharSequence) arguments[0]).length();
+                throw new RuntimeError(paren, "Can only take the length of arrays, maps and strings.");
+            }
+        });
+
+        functions.put("push", new Native(2) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                if (!(arguments[0] instanceof LoxArray)) throw new RuntimeError(paren, "Can only push onto an array.");
+                return (double) ((LoxArray) arguments[0]).push(arguments[1]);
+            }
+        });
+
+        functions.put("has", new Native(2) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                return map(paren, arguments[0]).has(arguments[1]);
+            }
+        });
+
+        functions.put("delete", new Native(2) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                return map(paren, arguments[0]).remove(arguments[1]);
+            }
+        });
+
+        functions.put("keys", new Native(1) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                return map(paren, arguments[0]).keys();
+            }
+        });
+
+        functions.put("values", new Native(1) {
+            @Override
+            public Object call(Token paren, Object[] arguments) {
+                return map(paren, arguments[0]).values();
+            }
+        });
+
+        return Collections.unmodifiableMap(functions);
+    }
+
+    private static int count(Token paren, Object value, String what) {
+        if (value instanceof Double) {
+            double number = (double) value;
+            if (number >= 0 && number <= Integer.MAX_VALUE && number == Math.floor(number)) return (int) number;
+        }
+        throw new RuntimeError(paren, what + " must be a non-negative integer.");
+    }
+
+    private static LoxChannel channel(Token paren, Object value) {
+        if (value instanceof LoxChannel) return (LoxChannel) value;
+        throw new RuntimeError(paren, "Expected a channel.");
+    }
+
+    private static LoxMap map(Token paren, Object value) {
+        if (value instanceof LoxMap) return (LoxMap) value;
+        throw new RuntimeError(paren, "Expected a map.");
+    }
+}
@@ -0,0 +1,25 @@
+package com.craftinginterpreters.lox;
+
+// Base of the executable tree used by the NodeInterpreter.
+// Unlike Expr/Stmt, which only describe the program, nodes know how to run themselves and can
+// swap themselves out of the tree for a more specialized version once they have seen some values.
+abstract class Node {
+    Node parent;
+
+    <T extends Node> T adopt(T child) {
+        if (child != null) child.parent = this;
+        return child;
+    }
+
+    // Rewrites this node in its parent, every later execution goes to the new node
+    <T extends Node> T replace(T newNode) {
+        newNode.parent = parent;
+        parent.replaceChild(this, newNode);
+        return newNode;
+    }
+
+    // Nodes which have children that can rewrite themselves must override this
+    void replaceChild(Node oldChild, Node newChild) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no replaceable children");
+    }
+}
@@ -0,0 +1,144 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the executable node tree from the resolved Expr/Stmt tree.
+// Groupings disappear here since they only matter for parsing.
+class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    private final Environment globals;
+    private final OutputSink out;
+    private final Tasks tasks;
+    // Set once a spawn has been built in the blocks we are in, the tasks share their frames
+    private boolean spawns = false;
+
+    NodeBuilder(Environment globals, OutputSink out, Tasks tasks) {
+        this.globals = globals;
+        this.out = out;
+        this.tasks = tasks;
+    }
+
+    List<StmtNode> build(List<Stmt> statements) {
+        List<StmtNode> nodes = new ArrayList<>();
+        for (Stmt statement : statements) {
+            nodes.add(statement.accept(this));
+        }
+        return nodes;
+    }
+
+    private ExprNode build(Expr expr) {
+        if (expr == null) return null;
+        return expr.accept(this);
+    }
+
+    @Override
+    public StmtNode visitBlockStmt(Stmt.Block stmt) {
+        boolean enclosingSpawns = spawns;
+        spawns = false;
+        List<StmtNode> statements = build(stmt.statements);
+        boolean shared = spawns;
+        spawns = enclosingSpawns || shared;
+        return new StmtNode.Block(statements, stmt.slots, shared);
+    }
+
+    @Override
+    public StmtNode visitExpressionStmt(Stmt.Expression stmt) {
+        return new StmtNode.Expression(build(stmt.expression));
+    }
+
+    @Override
+    public StmtNode visitPrintStmt(Stmt.Print stmt) {
+        return new StmtNode.Print(build(stmt.expression), out);
+    }
+
+    @Override
+    public StmtNode visitVarStmt(Stmt.Var stmt) {
+        if (stmt.slot < 0) return new StmtNode.DefineGlobal(build(stmt.initializer), stmt.name, globals);
+        return new StmtNode.DefineLocal(build(stmt.initializer), stmt.slot);
+    }
+
+    @Override
+    public ExprNode visitAssignExpr(Expr.Assign expr) {
+        if (expr.depth < 0) return new ExprNode.WriteGlobal(build(expr.value), expr.name, globals);
+        return new ExprNode.WriteLocal(build(expr.value), expr.depth, expr.slot);
+    }
+
+    @Override
+    public ExprNode visitBinaryExpr(Expr.Binary expr) {
+        return new BinaryNode.Uninitialized(build(expr.left), expr.operator, build(expr.right));
+    }
+
+    @Override
+    public ExprNode visitCallExpr(Expr.Call expr) {
+        ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = build(expr.arguments.get(i));
+        }
+        return new ExprNode.Call(build(expr.callee), arguments, expr.paren);
+    }
+
+    @Override
+    public ExprNode visitSpawnExpr(Expr.Spawn expr) {
+        // The body's own frame belongs to the task, the frames around the spawn are shared with it
+        StmtNode body = visitBlockStmt(expr.body);
+        spawns = true;
+        return new ExprNode.Spawn(body, tasks);
+    }
+
+    @Override
+    public ExprNode visitGroupingExpr(Expr.Grouping expr) {
+        return build(expr.expression);
+    }
+
+    @Override
+    public ExprNode visitArrayExpr(Expr.Array expr) {
+        ExprNode[] elements = new ExprNode[expr.elements.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = build(expr.elements.get(i));
+        }
+        return new ExprNode.ArrayLiteral(elements);
+    }
+
+    @Override
+    public ExprNode visitMapExpr(Expr.Map expr) {
+        ExprNode[] entries = new ExprNode[expr.keys.size() * 2];
+        for (int i = 0; i < expr.keys.size(); i++) {
+            entries[i * 2] = build(expr.keys.get(i));
+            entries[i * 2 + 1] = build(expr.values.get(i));
+        }
+        return new ExprNode.MapLiteral(entries);
+    }
+
+    @Override
+    public ExprNode visitIndexExpr(Expr.Index expr) {
+        return new ExprNode.Index(build(expr.object), build(expr.index), expr.bracket);
+    }
+
+    @Override
+    public ExprNode visitSetIndexExpr(Expr.SetIndex expr) {
+        return new ExprNode.SetIndex(build(expr.object), build(expr.index), build(expr.value), expr.bracket);
+    }
+
+    @Override
+    public ExprNode visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double) return new ExprNode.NumberLiteral((double) expr.value);
+        return new ExprNode.Literal(expr.value);
+    }
+
+    @Override
+    public ExprNode visitUnaryExpr(Expr.Unary expr) {
+        switch (expr.operator.type) {
+            case MINUS: return new ExprNode.Negate(build(expr.right), expr.operator);
+            case BANG: return new ExprNode.Not(build(expr.right));
+        }
+
+        // Unreachable.
+        return null;
+    }
+
+    @Override
+    public ExprNode visitVariableExpr(Expr.Variable expr) {
+        if (expr.depth < 0) return new ExprNode.ReadGlobal(expr.name, globals);
+        return new ExprNode.ReadLocal(expr.name, expr.depth, expr.slot);
+    }
+}
@@ -0,0 +1,47 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// Runs programs on the self-specializing node tree instead of visiting the AST.
+// The statements have to go through the Resolver first, the nodes rely on the slots it assigns.
+class NodeInterpreter {
+    final Environment globals = new Environment();
+    private final OutputSink out;
+    private final ErrorReporter reporter;
+    private final Tasks tasks;
+
+    NodeInterpreter() {
+        this(new OutputSink(System.out), new ErrorReporter(System.err));
+    }
+
+    NodeInterpreter(OutputSink out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+        this.tasks = new Tasks(reporter);
+        Natives.define(globals);
+    }
+
+    void interpret(List<Stmt> statements) {
+        execute(prepare(statements));
+    }
+
+    // Building and running are split so a tree can be run more than once and keep its specializations
+    List<StmtNode> prepare(List<Stmt> statements) {
+        return new NodeBuilder(globals, out, tasks).build(statements);
+    }
+
+    void execute(List<StmtNode> nodes) {
+        try {
+            for (StmtNode node : nodes) {
+                node.execute(globals);
+            }
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+
+    // Spawned tasks keep running after interpret() returns, a program is only done once they are
+    void awaitTasks() {
+        tasks.awaitAll();
+    }
+}
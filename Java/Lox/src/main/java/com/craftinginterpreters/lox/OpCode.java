@@ -0,0 +1,40 @@
+package com.craftinginterpreters.lox;
+
+// Instructions understood by the VM, each one is a single byte in the chunk.
+// Operands follow the opcode as unsigned 16 bit values (high byte first).
+final class OpCode {
+    static final byte CONSTANT = 0;        // [index] push constants[index]
+    static final byte NIL = 1;
+    static final byte TRUE = 2;
+    static final byte FALSE = 3;
+    static final byte UNINITIALIZED = 4;   // push the marker for `var a;`
+    static final byte POP = 5;
+    static final byte POP_N = 6;           // [count] drop the locals of a block
+    static final byte GET_LOCAL = 7;       // [slot]
+    static final byte SET_LOCAL = 8;       // [slot]
+    static final byte DEFINE_GLOBAL = 9;   // [name]
+    static final byte GET_GLOBAL = 10;     // [name]
+    static final byte SET_GLOBAL = 11;     // [name]
+    static final byte EQUAL = 12;
+    static final byte NOT_EQUAL = 13;
+    static final byte GREATER = 14;
+    static final byte GREATER_EQUAL = 15;
+    static final byte LESS = 16;
+    static final byte LESS_EQUAL = 17;
+    static final byte ADD = 18;
+    static final byte SUBTRACT = 19;
+    static final byte MULTIPLY = 20;
+    static final byte DIVIDE = 21;
+    static final byte NOT = 22;
+    static final byte NEGATE = 23;
+    static final byte PRINT = 24;
+    static final byte RETURN = 25;
+    static final byte CALL = 26;           // [argument count] [paren] call the value below the arguments
+    static final byte ARRAY = 27;          // [count] replace the top count values with an array of them
+    static final byte GET_INDEX = 28;      // [bracket] array, index -> element
+    static final byte SET_INDEX = 29;      // [bracket] array, index, value -> value
+    static final byte MAP = 30;            // [count] replace the top count key, value pairs with a map of them
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,231 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Optional pass between the Parser and the engines, it rewrites the tree into a cheaper one:
+//  - constant subtrees are folded into a single literal, e.g. (1 + 2) * 3 becomes 9
+//  - grouping nodes are dropped, they only matter while parsing
+//  - identities like x * 1 and x - 0 are removed when x is known to be a number
+//  - expression statements and blocks which can't do anything are removed
+// Anything that would raise a runtime error (like 1 / 0 or "a" - 1) is left as it is,
+// so the error still happens when the program runs.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> result = new ArrayList<>();
+        for (Stmt statement : statements) {
+            Stmt optimized = statement.accept(this);
+            if (optimized != null) {
+                optimized.line = statement.line;
+                result.add(optimized);
+            }
+        }
+        return result;
+    }
+
+    private Expr optimize(Expr expr) {
+        if (expr == null) return null;
+        return expr.accept(this);
+    }
+
+    // A statement is removed by returning null
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = optimize(stmt.statements);
+        if (statements.isEmpty()) return null;
+        return new Stmt.Block(statements);
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+
+        // Only literals are known to be free of side effects, even reading a variable can fail
+        if (expression instanceof Expr.Literal) return null;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        return new Stmt.Print(optimize(stmt.expression));
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        return new Stmt.Var(stmt.name, optimize(stmt.initializer));
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        return new Expr.Assign(expr.name, optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            try {
+                Object value = Interpreter.binary(expr.operator,
+                        ((Expr.Literal) left).value, ((Expr.Literal) right).value);
+                // Literals are always plain Strings, the engines and the AstCache store them as such
+                if (value instanceof Rope) value = value.toString();
+                return new Expr.Literal(value);
+            } catch (RuntimeError error) {
+                // Keep the expression so the error is raised at run time
+            }
+        }
+
+        switch (expr.operator.type) {
+            case STAR:
+                if (isNumber(left, 1) && isNumeric(right)) return right;
+                if (isNumeric(left) && isNumber(right, 1)) return left;
+                break;
+            case SLASH:
+                if (isNumeric(left) && isNumber(right, 1)) return left;
+                break;
+            case MINUS:
+                // x + 0 is not safe, -0 + 0 is 0
+                if (isNumeric(left) && isNumber(right, 0)) return left;
+                break;
+        }
+
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>();
+        for (Expr argument : expr.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expr.Call(optimize(expr.callee), expr.paren, arguments);
+    }
+
+    // The body stays a block even when it optimizes down to nothing, spawn still has to make a task
+    @Override
+    public Expr visitSpawnExpr(Expr.Spawn expr) {
+        Stmt.Block body = new Stmt.Block(optimize(expr.body.statements));
+        body.line = expr.body.line;
+        return new Expr.Spawn(expr.keyword, body);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    // Never folded, every evaluation of [...] makes a new array
+    @Override
+    public Expr visitArrayExpr(Expr.Array expr) {
+        List<Expr> elements = new ArrayList<>();
+        for (Expr element : expr.elements) {
+            elements.add(optimize(element));
+        }
+        return new Expr.Array(expr.bracket, elements);
+    }
+
+    // Same for {...} and maps
+    @Override
+    public Expr visitMapExpr(Expr.Map expr) {
+        List<Expr> keys = new ArrayList<>();
+        List<Expr> values = new ArrayList<>();
+        for (int i = 0; i < expr.keys.size(); i++) {
+            keys.add(optimize(expr.keys.get(i)));
+            values.add(optimize(expr.values.get(i)));
+        }
+        return new Expr.Map(expr.brace, keys, values);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        return new Expr.Index(optimize(expr.object), expr.bracket, optimize(expr.index));
+    }
+
+    @Override
+    public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+        return new Expr.SetIndex(optimize(expr.object), expr.bracket, optimize(expr.index), optimize(expr.value));
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+
+        if (right instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) right).value;
+            switch (expr.operator.type) {
+                case MINUS:
+                    if (value instanceof Double) return new Expr.Literal(-(double) value);
+                    break;
+                case BANG:
+                    return new Expr.Literal(!Interpreter.isTruthy(value));
+            }
+        }
+
+        // -(-x) is x and !!x is x, as long as the inner value already has the right type
+        if (right instanceof Expr.Unary && ((Expr.Unary) right).operator.type == expr.operator.type) {
+            Expr inner = ((Expr.Unary) right).right;
+            if (expr.operator.type == TokenType.MINUS && isNumeric(inner)) return inner;
+            if (expr.operator.type == TokenType.BANG && isBoolean(inner)) return inner;
+        }
+
+        return new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    private boolean isNumber(Expr expr, double number) {
+        return expr instanceof Expr.Literal && Double.valueOf(number).equals(((Expr.Literal) expr).value);
+    }
+
+    // True when the expression can only ever produce a number (or fail on its own)
+    private boolean isNumeric(Expr expr) {
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Double;
+
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == TokenType.MINUS;
+
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            switch (binary.operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+                case PLUS:
+                    return isNumeric(binary.left) && isNumeric(binary.right);
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isBoolean(Expr expr) {
+        if (expr instanceof Expr.Literal) return ((Expr.Literal) expr).value instanceof Boolean;
+
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.type == TokenType.BANG;
+
+        if (expr instanceof Expr.Binary) {
+            switch (((Expr.Binary) expr).operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,144 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+// Where print statements write. Output collects in one large buffer and goes to the stream in big
+// writes when the buffer fills up, on flush() and when the context finishes a program, instead of
+// one synchronized, auto flushed println per statement.
+//
+// Values are formatted straight into the buffer. Most numbers scripts print are whole or have a few
+// decimals, their digits are written without making a String. Everything else goes through
+// Interpreter.stringify, so the text is always the same.
+class OutputSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 10^k, for up to MAX_DECIMALS digits after the point
+    private static final int MAX_DECIMALS = 6;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private final Writer target;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int count = 0;
+    // Calls to println() and print(), a prelude which printed anything isn't snapshotted
+    private long printed = 0;
+
+    OutputSink(OutputStream out) {
+        this.target = new OutputStreamWriter(out, Charset.defaultCharset());
+    }
+
+    // Prints the value like Interpreter.stringify followed by a newline.
+    // Tasks print from their own threads, so this is synchronized, which is cheap while nobody else prints.
+    synchronized void println(Object value) {
+        printed++;
+        if (value instanceof Double) {
+            number((double) value);
+        } else {
+            text(Interpreter.stringify(value));
+        }
+        append('\n');
+    }
+
+    synchronized void print(String text) {
+        printed++;
+        text(text);
+    }
+
+    synchronized long printed() {
+        return printed;
+    }
+
+    synchronized void flush() {
+        try {
+            target.write(buffer, 0, count);
+            target.flush();
+        } catch (IOException e) {
+            // Same as PrintStream, a failing output stream doesn't stop the program
+        }
+        count = 0;
+    }
+
+    private void number(double value) {
+        if (!appendNumber(value)) text(Interpreter.stringify(value));
+    }
+
+    // Writes the value if it is in the range Double.toString prints without an exponent
+    // (1e-3 <= |value| < 1e7) and has at most MAX_DECIMALS decimals. The decimals written are the
+    // fewest which read back as exactly the same double, which is also what Double.toString prints.
+    // Returns false when the caller has to format the value itself.
+    private boolean appendNumber(double value) {
+        if (value == 0) {
+            // Double.toString keeps the sign of -0.0
+            text(Double.doubleToRawLongBits(value) == 0 ? "0" : "-0");
+            return true;
+        }
+
+        double magnitude = Math.abs(value);
+        if (!(magnitude >= 1e-3 && magnitude < 1e7)) return false;
+
+        for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+            long scale = POWERS_OF_TEN[decimals];
+            // Below 1e7 * 1e6 every long is an exact double, so the division is correctly rounded and
+            // compares equal exactly when the decimal digits parse back to the value
+            long digits = Math.round(magnitude * scale);
+            if ((double) digits / scale != magnitude) continue;
+
+            reserve(24);
+            if (value < 0) buffer[count++] = '-';
+            appendDigits(digits / scale, 1);
+            if (decimals > 0) {
+                buffer[count++] = '.';
+                appendDigits(digits % scale, decimals);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Writes the digits of a non-negative value, padded with zeros to at least width digits
+    private void appendDigits(long value, int width) {
+        int length = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) length++;
+        if (length < width) length = width;
+
+        int end = count + length;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    private void text(String text) {
+        int offset = 0;
+        while (offset < text.length()) {
+            if (count == buffer.length) flushBuffer();
+            int length = Math.min(text.length() - offset, buffer.length - count);
+            text.getChars(offset, offset + length, buffer, count);
+            count += length;
+            offset += length;
+        }
+    }
+
+    private void append(char c) {
+        if (count == buffer.length) flushBuffer();
+        buffer[count++] = c;
+    }
+
+    private void reserve(int length) {
+        if (buffer.length - count < length) flushBuffer();
+    }
+
+    // Hands the buffer to the writer without flushing the stream underneath
+    private void flushBuffer() {
+        try {
+            target.write(buffer, 0, count);
+        } catch (IOException e) {
+            // See flush()
+        }
+        count = 0;
+    }
+}
@@ -1,17 +1,38 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Set;
 
 class Parser {
-    private static final Set<String> invalidIdentifiers = new HashSet<>();
+    // Once this many tokens are behind us while streaming, they are dropped from the buffer
+    private static final int DISCARD_THRESHOLD = 4096;
 
-    private final List<Token> tokens;
-    private int current = 0;
-    Parser(List<Token> tokens) {
+    // Symbol ids of the names which can't be read in the current initializer
+    private final BitSet invalidIdentifiers = new BitSet();
+
+    // Tokens are read by index, a Token object is only made when the AST or an error needs one
+    private final TokenBuffer tokens;
+    // Set when the tokens are pulled from the scanner as they are needed
+    private final Lexer scanner;
+    private final ErrorReporter reporter;
+    private int current;
+
+    Parser(TokenBuffer tokens, ErrorReporter reporter) {
+        this(tokens, null, reporter);
+    }
+
+    // Reads the tokens straight from the scanner as they are needed
+    Parser(Lexer scanner, ErrorReporter reporter) {
+        this(scanner.tokens(), scanner, reporter);
+    }
+
+    private Parser(TokenBuffer tokens, Lexer scanner, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.scanner = scanner;
+        this.reporter = reporter;
+        this.current = 0;
+        fill();
     }
 
     List<Stmt> parse() {
@@ -24,6 +45,21 @@ class Parser {
         return statements;
     }
 
+    // For running a script while it is still being parsed, one top level declaration at a time.
+    // next() returns null for a declaration with a syntax error, like parse() does.
+    boolean hasNext() {
+        return !isAtEnd();
+    }
+
+    Stmt next() {
+        return declaration();
+    }
+
+    // Index of the next token, so a caller of next() can tell which tokens the declaration took
+    int position() {
+        return current;
+    }
+
     private Expr expression() {
         return assignment();
     }
@@ -32,7 +68,7 @@ class Parser {
         Expr expr = equality();
 
         if(match(TokenType.EQUAL)){
-            Token equals = previous();
+            int equals = current - 1;
             Expr value = assignment();
 
             if(expr instanceof Expr.Variable){
@@ -40,6 +76,11 @@ class Parser {
                 return new Expr.Assign(name, value);
             }
 
+            if (expr instanceof Expr.Index) {
+                Expr.Index index = (Expr.Index) expr;
+                return new Expr.SetIndex(index.object, index.bracket, index.index, value);
+            }
+
             error(equals, "Invalid assignment target.");
         }
 
@@ -47,9 +88,11 @@ class Parser {
     }
 
     private Stmt declaration() {
+        int line = tokens.line(current);
         try {
-            if (match(TokenType.VAR)) return varDeclaration();
-            return statement();
+            Stmt stmt = match(TokenType.VAR) ? varDeclaration() : statement();
+            stmt.line = line;
+            return stmt;
         } catch (ParseError error) {
             invalidIdentifiers.clear();
             synchronize();
@@ -58,10 +101,10 @@ class Parser {
     }
 
     private Stmt varDeclaration(){
-        Token name = consume(TokenType.IDENTIFIER, "Expect variable name");
+        Token name = tokens.token(consume(TokenType.IDENTIFIER, "Expect variable name"));
 
         // Create a set of invalid names
-        invalidIdentifiers.add(name.lexeme);
+        invalidIdentifiers.set(name.symbol);
 
         Expr initializer = null;
         if(match(TokenType.EQUAL)){
@@ -156,11 +199,42 @@ class Parser {
     private Expr unary() {
         if (match(TokenType.BANG, TokenType.MINUS)) {
             Token token = previous();
-            Expr expr = primary();
+            Expr expr = call();
             return new Expr.Unary(token, expr);
         }
 
-        return primary();
+        return call();
+    }
+
+    private Expr call() {
+        Expr expr = primary();
+
+        for (;;) {
+            if (match(TokenType.LEFT_PAREN)) {
+                expr = finishCall(expr);
+            } else if (match(TokenType.LEFT_BRACKET)) {
+                Expr index = expression();
+                Token bracket = tokens.token(consume(TokenType.RIGHT_BRACKET, "Expect ']' after index."));
+                expr = new Expr.Index(expr, bracket, index);
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    private Expr finishCall(Expr callee) {
+        List<Expr> arguments = new ArrayList<>();
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                if (arguments.size() >= 255) {
+                    error(current, "Can't have more than 255 arguments.");
+                }
+                arguments.add(expression());
+            } while (match(TokenType.COMMA));
+        }
+
+        Token paren = tokens.token(consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments."));
+        return new Expr.Call(callee, paren, arguments);
     }
 
     private Expr primary() {
@@ -169,16 +243,54 @@ class Parser {
         if (match(TokenType.NIL)) return new Expr.Literal(null);
 
         if (match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(tokens.literal(current - 1));
         }
 
         if(match(TokenType.IDENTIFIER)){
-            if(invalidIdentifiers.contains(previous().lexeme)){
-                throw error(previous(), "Variable is shadowed");
+            if(invalidIdentifiers.get(tokens.symbol(current - 1))){
+                throw error(current - 1, "Variable is shadowed");
             }
             return new Expr.Variable(previous());
         }
 
+        // spawn { ... } starts the block as a task and evaluates to the task, for join()
+        if (match(TokenType.SPAWN)) {
+            Token keyword = previous();
+            consume(TokenType.LEFT_BRACE, "Expect '{' after 'spawn'.");
+            Stmt.Block body = new Stmt.Block(block());
+            body.line = keyword.line;
+            return new Expr.Spawn(keyword, body);
+        }
+
+        // [a, b, c] makes an array
+        if (match(TokenType.LEFT_BRACKET)) {
+            Token bracket = previous();
+            List<Expr> elements = new ArrayList<>();
+            if (!check(TokenType.RIGHT_BRACKET)) {
+                do {
+                    elements.add(expression());
+                } while (match(TokenType.COMMA));
+            }
+            consume(TokenType.RIGHT_BRACKET, "Expect ']' after array elements.");
+            return new Expr.Array(bracket, elements);
+        }
+
+        // {key: value, ...} makes a map. A { at the start of a statement is still a block.
+        if (match(TokenType.LEFT_BRACE)) {
+            Token brace = previous();
+            List<Expr> keys = new ArrayList<>();
+            List<Expr> values = new ArrayList<>();
+            if (!check(TokenType.RIGHT_BRACE)) {
+                do {
+                    keys.add(expression());
+                    consume(TokenType.COLON, "Expect ':' after map key.");
+                    values.add(expression());
+                } while (match(TokenType.COMMA));
+            }
+            consume(TokenType.RIGHT_BRACE, "Expect '}' after map entries.");
+            return new Expr.Map(brace, keys, values);
+        }
+
         if (match(TokenType.LEFT_PAREN)) {
             Expr expr = expression();
             // consume the token if it is correct else we handle the error
@@ -186,7 +298,7 @@ class Parser {
             return new Expr.Grouping(expr);
         }
 
-        throw error(peek(), "Except an Expression");
+        throw error(current, "Except an Expression");
     }
 
     // utils
@@ -200,46 +312,61 @@ class Parser {
         return false;
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
-        throw error(peek(), message);
+    // Returns the index of the consumed token
+    private int consume(TokenType type, String message) {
+        if (check(type)) {
+            advanceWithNoReturn();
+            return current - 1;
+        }
+        throw error(current, message);
     }
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return peek() == type;
     }
 
-    private Token peek() {
-        return tokens.get(current);
-    }
-
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private TokenType peek() {
+        return tokens.type(current);
     }
 
     private void advanceWithNoReturn() {
-        if (!isAtEnd()) current++;
+        if (!isAtEnd()) {
+            current++;
+            fill();
+        }
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.token(current - 1);
+    }
+
+    // Makes sure the current token has been scanned. The previous one is kept around
+    // for the AST, everything before it can go.
+    private void fill() {
+        if (scanner == null) return;
+
+        if (current - 1 - tokens.first() >= DISCARD_THRESHOLD) {
+            tokens.discardBefore(current - 1);
+        }
+        while (current >= tokens.end()) {
+            scanner.scanNext();
+        }
     }
 
-    private ParseError error(Token token, String message) {
-        Lox.error(token, message);
-        return new ParseError();
+    private ParseError error(int token, String message) {
+        reporter.error(tokens.token(token), tokens.start(token), tokens.column(token), message);
+        return PARSE_ERROR;
     }
 
     private void synchronize() {
         advanceWithNoReturn();
 
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) return;
+            if (tokens.type(current - 1) == TokenType.SEMICOLON) return;
 
             // If discard everything until we find a statement boundary
-            switch (peek().type) {
+            switch (peek()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -256,9 +383,15 @@ class Parser {
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return peek() == TokenType.EOF;
     }
 
+    // Only unwinds to declaration(), so one instance without a stack trace does for every error
+    private static final ParseError PARSE_ERROR = new ParseError();
+
     private static class ParseError extends RuntimeException {
+        ParseError() {
+            super(null, null, false, false);
+        }
     }
 }
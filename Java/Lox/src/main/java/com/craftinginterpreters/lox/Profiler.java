@@ -0,0 +1,190 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+// Sampling profiler for --profile. The interpreter keeps a Stack of the statements (and calls) it is
+// in the middle of, a background thread looks at every stack once per interval and counts what it sees.
+// Running code only pushes and pops, all the counting and naming happens on the sampling thread.
+//
+// The result is written in the collapsed stack format flame graph tools read, one line per distinct
+// stack with its number of samples:
+//
+//   main;block:3;print:5 120
+//
+// Each frame is the kind of statement (or the function called) and the line it starts on.
+class Profiler {
+    private static final long INTERVAL_NANOS = 1_000_000;
+
+    // What one thread (the main program or a spawned task) is running right now.
+    // Only its own thread writes it, depth is volatile so the sampler sees the frames below it.
+    static class Stack {
+        private final Profiler profiler;
+        private Object[] frames;
+        private volatile int depth;
+
+        private Stack(Profiler profiler, Object[] frames, int depth) {
+            this.profiler = profiler;
+            this.frames = frames;
+            this.depth = depth;
+        }
+
+        // Frames are Stmts, Expr.Calls and Expr.Spawns
+        void push(Object frame) {
+            int top = depth;
+            if (top == frames.length) {
+                Object[] grown = new Object[top * 2];
+                System.arraycopy(frames, 0, grown, 0, top);
+                frames = grown;
+            }
+            frames[top] = frame;
+            depth = top + 1;
+        }
+
+        void pop() {
+            depth--;
+        }
+
+        // A spawned task starts out below the frames of whoever spawned it
+        Stack fork(Expr.Spawn spawn) {
+            int top = depth;
+            Object[] copy = new Object[Math.max(16, top * 2)];
+            System.arraycopy(frames, 0, copy, 0, top);
+            copy[top] = spawn;
+            return profiler.register(new Stack(profiler, copy, top + 1));
+        }
+
+        // Called by a task when it is done
+        void close() {
+            profiler.stacks.remove(this);
+        }
+    }
+
+    private final Set<Stack> stacks = ConcurrentHashMap.newKeySet();
+    // Only touched by the sampling thread until stop() has joined it
+    private final Map<String, Long> folded = new HashMap<>();
+    private final Map<Integer, long[]> lines = new HashMap<>();
+    private long samples = 0;
+
+    private volatile boolean running;
+    private Thread sampler;
+
+    // The stack of the main program
+    Stack stack() {
+        return register(new Stack(this, new Object[16], 0));
+    }
+
+    private Stack register(Stack stack) {
+        stacks.add(stack);
+        return stack;
+    }
+
+    void start() {
+        running = true;
+        sampler = new Thread(this::sample, "lox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void stop() {
+        running = false;
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sample() {
+        while (running) {
+            LockSupport.parkNanos(INTERVAL_NANOS);
+            for (Stack stack : stacks) {
+                record(stack);
+            }
+        }
+    }
+
+    private void record(Stack stack) {
+        // Reading depth first makes the frames below it visible, a frame can be stale if the stack
+        // changed while we read it, which is fine for a sample
+        int depth = stack.depth;
+        Object[] frames = stack.frames;
+        if (depth == 0) return;
+        depth = Math.min(depth, frames.length);
+
+        StringBuilder key = new StringBuilder("main");
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < depth; i++) {
+            Object frame = frames[i];
+            int line = line(frame);
+            key.append(';').append(name(frame)).append(':').append(line);
+
+            // Per line the sample counts once towards the total, and towards self if it is the innermost frame
+            long[] counts = lines.computeIfAbsent(line, l -> new long[2]);
+            if (seen.add(line)) counts[1]++;
+            if (i == depth - 1) counts[0]++;
+        }
+
+        folded.merge(key.toString(), 1L, Long::sum);
+        samples++;
+    }
+
+    private static int line(Object frame) {
+        if (frame instanceof Stmt) return ((Stmt) frame).line;
+        if (frame instanceof Expr.Call) return ((Expr.Call) frame).paren.line;
+        return ((Expr.Spawn) frame).keyword.line;
+    }
+
+    private static String name(Object frame) {
+        if (frame instanceof Stmt.Print) return "print";
+        if (frame instanceof Stmt.Var) return "var " + ((Stmt.Var) frame).name.lexeme;
+        if (frame instanceof Stmt.Block) return "block";
+        if (frame instanceof Stmt.Expression) return "expression";
+        if (frame instanceof Expr.Spawn) return "spawn";
+
+        Expr callee = ((Expr.Call) frame).callee;
+        if (callee instanceof Expr.Variable) return ((Expr.Variable) callee).name.lexeme + "()";
+        return "call";
+    }
+
+    void write(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> stack : folded.entrySet()) {
+                writer.write(stack.getKey() + " " + stack.getValue() + "\n");
+            }
+        }
+    }
+
+    // The top lines by samples spent in them directly (self) next to the samples spent in them or
+    // anything nested inside (total). source has the script's lines, or is null in the REPL.
+    void printSummary(PrintStream err, int top, List<String> source) {
+        err.println("Profile: " + samples + " samples, one every " + INTERVAL_NANOS / 1_000_000 + " ms");
+        if (samples == 0) return;
+
+        List<Map.Entry<Integer, long[]>> hottest = new ArrayList<>(lines.entrySet());
+        hottest.sort((a, b) -> {
+            int bySelf = Long.compare(b.getValue()[0], a.getValue()[0]);
+            return bySelf != 0 ? bySelf : Long.compare(b.getValue()[1], a.getValue()[1]);
+        });
+
+        err.println("   self   total   line");
+        for (Map.Entry<Integer, long[]> entry : hottest.subList(0, Math.min(top, hottest.size()))) {
+            int line = entry.getKey();
+            String text = source != null && line >= 1 && line <= source.size() ? source.get(line - 1).trim() : "";
+            err.println(String.format("%6.1f%% %6.1f%% %6d   %s",
+                    100.0 * entry.getValue()[0] / samples, 100.0 * entry.getValue()[1] / samples, line, text));
+        }
+    }
+}
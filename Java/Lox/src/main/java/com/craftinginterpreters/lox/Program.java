@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+
+// A parsed, optimized and resolved script, made by LoxContext.parse().
+// Nothing writes to the tree after the Resolver, so a Program can be run by many contexts at once,
+// the engines build whatever state they need (nodes, closures, classes) per context.
+public final class Program {
+    final List<Stmt> statements;
+
+    Program(List<Stmt> statements) {
+        this.statements = Collections.unmodifiableList(statements);
+    }
+}
@@ -0,0 +1,171 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The resolver walks the tree once before it is interpreted and works out where every local variable lives.
+// Each block gets an array of slots, so a local is found using (depth, slot):
+// depth is the number of environments to walk up and slot is the index inside that environment.
+// Anything which is not found in a block scope is a global and is still looked up by name.
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // One map per block from the variable name to its slot, innermost scope is at the end
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scopes.add(new HashMap<>());
+        resolve(stmt.statements);
+        stmt.slots = scopes.remove(scopes.size() - 1).size();
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        // The initializer is resolved first so it still sees the outer variable with the same name
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+
+        if (scopes.isEmpty()) return null;
+
+        // Declaring the same name twice in a block reuses the slot, same as overwriting the map entry did
+        Map<String, Integer> scope = scopes.get(scopes.size() - 1);
+        Integer slot = scope.get(stmt.name.lexeme);
+        if (slot == null) {
+            slot = scope.size();
+            scope.put(stmt.name.lexeme, slot);
+        }
+
+        stmt.slot = slot;
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        resolve(expr.callee);
+        for (Expr argument : expr.arguments) {
+            resolve(argument);
+        }
+        return null;
+    }
+
+    // The spawned block is resolved like any other block, the task starts from the environment it was spawned in
+    @Override
+    public Void visitSpawnExpr(Expr.Spawn expr) {
+        return visitBlockStmt(expr.body);
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        resolve(expr.value);
+
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(expr.name.lexeme);
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot = slot;
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+        for (Expr element : expr.elements) {
+            resolve(element);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitMapExpr(Expr.Map expr) {
+        for (int i = 0; i < expr.keys.size(); i++) {
+            resolve(expr.keys.get(i));
+            resolve(expr.values.get(i));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        resolve(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(expr.name.lexeme);
+            if (slot != null) {
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot = slot;
+                return null;
+            }
+        }
+
+        return null;
+    }
+}
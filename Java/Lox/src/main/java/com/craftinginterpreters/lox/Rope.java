@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+
+// A string made by + which hasn't been looked at yet. Building a string a piece at a time with
+// String + String copies everything so far on every step, so it takes quadratic time. A Rope just
+// points at its two halves and the characters are only copied once, when something needs them:
+// toString(), which stringify() and print go through, or isEqual().
+//
+// Lox code can't tell a Rope from a String. Every engine treats both the same way, as a
+// CharSequence, and anything that keeps or compares a string flattens it first: isEqual(),
+// the Optimizer's constants and the Snapshot.
+//
+// Ropes can be shared between tasks. A flattened one keeps its String and drops its halves. flat
+// is written before the halves are cleared, and they are all volatile, so a thread which sees a
+// cleared half also sees the String.
+final class Rope implements CharSequence {
+    // Shorter results are just concatenated, copying them costs less than a Rope
+    private static final int MIN_LENGTH = 64;
+
+    // String or Rope, null once flattened
+    private volatile CharSequence left;
+    private volatile CharSequence right;
+    private volatile String flat;
+    private final int length;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+
+    // What + does with two strings
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+        // An int length is all the JVM allows for the String this has to become
+        if ((long) left.length() + right.length() > Integer.MAX_VALUE - 8) {
+            throw new OutOfMemoryError("String too long.");
+        }
+        if (left.length() + right.length() < MIN_LENGTH) return left.toString() + right;
+        return new Rope(left, right);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String string = flat;
+        if (string != null) return string;
+
+        // The pieces are copied from the last one back. A loop and not a recursion, a string built
+        // one piece at a time is a rope as deep as the number of pieces.
+        char[] chars = new char[length];
+        int end = length;
+        ArrayDeque<CharSequence> pieces = new ArrayDeque<>();
+        pieces.push(this);
+        while (!pieces.isEmpty()) {
+            CharSequence piece = pieces.pop();
+            if (piece instanceof Rope) {
+                Rope rope = (Rope) piece;
+                CharSequence left = rope.left;
+                CharSequence right = rope.right;
+                if (left != null && right != null) {
+                    pieces.push(left);
+                    pieces.push(right);
+                    continue;
+                }
+                piece = rope.flat;
+            }
+
+            String text = (String) piece;
+            end -= text.length();
+            text.getChars(0, text.length(), chars, end);
+        }
+
+        string = new String(chars);
+        flat = string;
+        left = null;
+        right = null;
+        return string;
+    }
+
+    // Same as for the String it stands for, so a Rope can be a key wherever a String can
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Rope || other instanceof String)) return false;
+        return length == ((CharSequence) other).length() && toString().equals(other.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
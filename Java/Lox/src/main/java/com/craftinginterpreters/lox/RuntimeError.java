@@ -0,0 +1,22 @@
+package com.craftinginterpreters.lox;
+
+// Reported with its message and line only, so it doesn't fill in a stack trace
+class RuntimeError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final Token token;
+    final int line;
+
+    RuntimeError(Token token, String message) {
+        super(message, null, false, false);
+        this.token = token;
+        this.line = token.line;
+    }
+
+    // Used by the VM, which only keeps line numbers around and not the tokens
+    RuntimeError(int line, String message) {
+        super(message, null, false, false);
+        this.token = null;
+        this.line = line;
+    }
+}
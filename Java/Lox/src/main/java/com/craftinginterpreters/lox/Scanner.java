@@ -1,40 +1,25 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.HashMap;
-import java.util.Map;
-
 // Importign all the token types
 import com.craftinginterpreters.lox.TokenType;
 
-public class Scanner {
-    private static final Map<String, TokenType> keywords;
-
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and",    TokenType.AND);
-        keywords.put("class",  TokenType.CLASS);
-        keywords.put("else",   TokenType.ELSE);
-        keywords.put("false",  TokenType.FALSE);
-        keywords.put("for",    TokenType.FOR);
-        keywords.put("fun",    TokenType.FUN);
-        keywords.put("if",     TokenType.IF);
-        keywords.put("nil",    TokenType.NIL);
-        keywords.put("or",     TokenType.OR);
-        keywords.put("print",  TokenType.PRINT);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("super",  TokenType.SUPER);
-        keywords.put("this",   TokenType.THIS);
-        keywords.put("true",   TokenType.TRUE);
-        keywords.put("var",    TokenType.VAR);
-        keywords.put("while",  TokenType.WHILE);
-    }
+public class Scanner implements Lexer {
+    // 10^n for the exact fast path in numberValue()
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
 
-    
     // This is marked as final as we don't want to change after the object is created
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final Source source;
+
+    // Identifiers and keywords are interned here, the tokens only keep the id
+    private final SymbolTable symbols = new SymbolTable();
+    private final TokenBuffer tokens;
+    private final ErrorReporter reporter;
+
+    // Set once the EOF token has been added
+    private boolean done = false;
     
     // start defines the start of the lexeme
     // current defines the current position of reader
@@ -42,21 +27,63 @@ public class Scanner {
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    // lineStart is the offset the current line starts at, column is where the current lexeme starts on it
+    private int lineStart = 0;
+    private int column = 1;
+    // Line the current lexeme starts on, a string can go on past it
+    private int startLine = 1;
     
     Scanner(String source){
+        this(Source.of(source), new ErrorReporter(System.err));
+    }
+
+    Scanner(Source source, ErrorReporter reporter){
         this.source = source;
+        this.reporter = reporter;
+        this.tokens = new TokenBuffer(source, symbols);
     }
     
-    List<Token> scanTokens(){
+    @Override
+    public TokenBuffer scanTokens(){
+        LoxEvents.Scan event = LoxEvents.beginScan();
+
+        while (!done) {
+            scanNext();
+        }
+
+        LoxEvents.endScan(event, tokens.end());
+        return tokens;
+    }
+
+    @Override
+    public TokenBuffer tokens(){
+        return tokens;
+    }
+
+    // Scans only as far as the next token, so the Parser can pull tokens one at a time
+    // without the whole input being scanned first. Adds the EOF token once at the end.
+    @Override
+    public void scanNext(){
+        if (done) return;
+
+        int end = tokens.end();
         while(!isAtEnd()){
             // we are at the beginning of the next lexeme
             start = current;
+            column = start - lineStart + 1;
+            startLine = line;
+            // Text of tokens still in the buffer may be needed for their lexeme
+            source.release(Math.min(start, tokens.firstStart()));
             scanToken();
+
+            if (tokens.end() != end) return;
         }
         
         // The EOF token is not compulsary but it is good to have
-        tokens.add(new Token(TokenType.EOF, "", null, line));
-        return tokens;
+        start = current;
+        column = start - lineStart + 1;
+        tokens.add(TokenType.EOF, current, 0, line, column, -1, 0, null);
+        done = true;
     }
     
     private void scanToken(){
@@ -68,6 +95,9 @@ public class Scanner {
             case ')': addToken(TokenType.RIGHT_PAREN); break;
             case '{': addToken(TokenType.LEFT_BRACE); break;
             case '}': addToken(TokenType.RIGHT_BRACE); break;
+            case '[': addToken(TokenType.LEFT_BRACKET); break;
+            case ']': addToken(TokenType.RIGHT_BRACKET); break;
+            case ':': addToken(TokenType.COLON); break;
             case ',': addToken(TokenType.COMMA); break;
             case '.': addToken(TokenType.DOT); break;
             case '-': addToken(TokenType.MINUS); break;
@@ -112,6 +142,7 @@ public class Scanner {
 
             case '\n':
               line++;
+              lineStart = current;
               break;
               
             default:
@@ -120,7 +151,7 @@ public class Scanner {
                 }else if(isAlpha(c)){
                     identifier();
                 }else{
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(start, line, column, "Unexpected character.");
                 }
                 break;
         }
@@ -132,12 +163,13 @@ public class Scanner {
             advance();
         }
         
-        // Once we have the identifier, check if it is a keyword or not
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
+        // Once we have the identifier, check if it is a keyword or not.
+        // Keywords are the first symbols in the table so this is the same lookup.
+        int symbol = symbols.intern(source, start, current);
+        TokenType type = symbols.keyword(symbol);
         if(type == null) type = TokenType.IDENTIFIER;
         
-        addToken(type);
+        tokens.add(type, start, current - start, line, column, symbol, 0, null);
     }
     
     private void number(){
@@ -154,18 +186,47 @@ public class Scanner {
             }
         }
         
-        addToken(TokenType.NUMBER, Double.valueOf(source.substring(start, current)));
+        tokens.add(TokenType.NUMBER, start, current - start, line, column, -1, numberValue(source, start, current), null);
+    }
+
+    // Value of a number lexeme, shared with the TableScanner.
+    // Up to 15 digits the mantissa is exact as a double, and so is 10^22,
+    // so one division gives the correctly rounded result. Anything longer goes to the JDK.
+    static double numberValue(Source source, int start, int end){
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fraction = 0;
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+            if (fraction >= 0) fraction++;
+        }
+        if (fraction < 0) fraction = 0;
+
+        if (digits <= 15 && fraction < POWERS_OF_TEN.length) {
+            return mantissa / POWERS_OF_TEN[fraction];
+        }
+        return Double.parseDouble(source.substring(start, end));
     }
     
     private void string(){
         while(peek() != '"' && !isAtEnd()){
             // we have multi line in lox
-            if(peek() == '\n') line++;
+            if(peek() == '\n') {
+                line++;
+                lineStart = current + 1;
+            }
             advance();
         }
         
         if(isAtEnd()){
-            Lox.error(line, "Unterminated string.");
+            reporter.error(current, line, current - lineStart + 1, "Unterminated string.");
             return;
         }
         
@@ -174,7 +235,7 @@ public class Scanner {
         
         // We store the value of the string and trime surrounding quotes
         String value = source.substring(start + 1, current - 1);
-        addToken(TokenType.STRING, value);
+        tokens.add(TokenType.STRING, start, current - start, startLine, column, -1, 0, value);
     }
     
     // match function check if the current character matches the expected
@@ -194,7 +255,7 @@ public class Scanner {
     }
     
     private char peekNext(){
-        if (current + 1 >= source.length()) return '\0';
+        if (source.isAtEnd(current + 1)) return '\0';
         return source.charAt(current + 1);
     }
     
@@ -215,7 +276,7 @@ public class Scanner {
     }
         
     private boolean isAtEnd(){
-        return current >= source.length();
+        return source.isAtEnd(current);
     }
     
     private char advance(){
@@ -223,11 +284,6 @@ public class Scanner {
     }
     
     private void addToken(TokenType type){
-        addToken(type, null);
-    }
-    
-    private void addToken(TokenType type, Object literal){
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, line, column, -1, 0, null);
     }
 }
@@ -0,0 +1,248 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+// Keeps the globals a prelude leaves behind on disk, like V8's startup snapshots, so the next run
+// defines them straight away instead of scanning, parsing and running the prelude again.
+// Enabled with --prelude=file, the snapshots go in the same directory as the AstCache files.
+//
+// Unlike the AstCache this is on the startup path of every run, so there is no SHA-256 (setting up
+// MessageDigest alone takes longer than restoring a big snapshot). The file is named after a CRC32C of
+// the prelude's path and starts with what it was taken from: the format, the interpreter version,
+// the charset, the path, and the size and CRC32C of the prelude's bytes. The body has its own CRC32C.
+// A missing, stale or broken snapshot is never an error, the prelude just runs and a new one is written.
+//
+// Only plain values can be saved: nil, booleans, numbers, strings, variables which were never
+// initialized and the natives, by name. A prelude which leaves a channel or a task in a global
+// can't be replayed from its globals, store() refuses it and the prelude runs every time.
+class Snapshot {
+    private static final int MAGIC = 0x4c4f5853; // "LOXS"
+    // Bump when the layout below changes
+    private static final int FORMAT = 1;
+    private static final int END = 0x454e4421; // "END!"
+
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    // Value tags
+    private static final int NIL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int NUMBER = 3;
+    private static final int STRING = 4;
+    private static final int UNINITIALIZED = 5;
+    private static final int NATIVE = 6;
+
+    private final Path file;
+    // What the snapshot has to have been taken from
+    private final byte[] header;
+    private final long size;
+    private final int checksum;
+
+    // Reads the prelude once, so it has to exist
+    Snapshot(Path directory, Path prelude, Charset charset) throws IOException {
+        // Not a + concatenation, bootstrapping that costs as much as the rest of a small restore
+        String origin = String.join("/", Integer.toString(FORMAT), Lox.VERSION, charset.name(), prelude.toAbsolutePath().toString());
+        this.header = origin.getBytes(StandardCharsets.UTF_8);
+
+        CRC32C name = new CRC32C();
+        name.update(header);
+        this.file = directory.resolve(Long.toHexString(name.getValue()) + ".loxs");
+
+        CRC32C content = new CRC32C();
+        try (FileChannel channel = FileChannel.open(prelude, StandardOpenOption.READ)) {
+            size = channel.size();
+            for (long position = 0; position < size; position += REGION_SIZE) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(REGION_SIZE, size - position));
+                content.update(region);
+            }
+        }
+        this.checksum = (int) content.getValue();
+    }
+
+    // Defines the saved globals in the context. Returns false, without defining anything, when there
+    // is no usable snapshot of this prelude.
+    boolean restore(LoxContext context) {
+        if (!Files.isRegularFile(file)) return false;
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT) return false;
+
+            byte[] stored = new byte[in.getInt()];
+            in.get(stored);
+            if (!Arrays.equals(stored, header)) return false;
+            if (in.getLong() != size || in.getInt() != checksum) return false;
+
+            // Checked up front, so nothing is defined from a damaged body
+            int body = in.position();
+            int end = in.limit() - 8;
+            if (in.getInt(end + 4) != END) return false;
+            CRC32C crc = new CRC32C();
+            crc.update(in.array(), body, end - body);
+            if ((int) crc.getValue() != in.getInt(end)) return false;
+
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                String name = string(in);
+                context.define(name, value(in));
+            }
+            return true;
+        } catch (IOException | RuntimeException error) {
+            // A broken or half written file is the same as no file
+            return false;
+        }
+    }
+
+    private static Object value(ByteBuffer in) {
+        int tag = in.get() & 0xff;
+        switch (tag) {
+            case NIL: return null;
+            case TRUE: return true;
+            case FALSE: return false;
+            case NUMBER: return in.getDouble();
+            case STRING: return string(in);
+            case UNINITIALIZED: return Interpreter.uninitialized;
+            case NATIVE: {
+                String name = string(in);
+                LoxCallable function = Natives.FUNCTIONS.get(name);
+                if (function == null) throw new IllegalStateException("Unknown native " + name);
+                return function;
+            }
+            default: throw new IllegalStateException("Bad value tag " + tag);
+        }
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getInt();
+        String string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return string;
+    }
+
+    // Best effort like AstCache.store(). Returns false without writing anything if one of the
+    // values can't be saved.
+    boolean store(Map<String, Object> globals) {
+        for (Object value : globals.values()) {
+            if (!(value == null || value instanceof Boolean || value instanceof Double || value instanceof CharSequence
+                    || value == Interpreter.uninitialized || nativeName(value) != null)) {
+                return false;
+            }
+        }
+
+        Path temp = null;
+        try {
+            Output body = new Output();
+            body.writeInt(globals.size());
+            for (Map.Entry<String, Object> global : globals.entrySet()) {
+                body.writeString(global.getKey());
+                value(body, global.getValue());
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(body.bytes, 0, body.size);
+
+            Files.createDirectories(file.getParent());
+
+            // Written next to the real name and moved in place, so a reader never sees half a file
+            temp = Files.createTempFile(file.getParent(), "snapshot", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(header.length);
+                out.write(header);
+                out.writeLong(size);
+                out.writeInt(checksum);
+                out.write(body.bytes, 0, body.size);
+                out.writeInt((int) crc.getValue());
+                out.writeInt(END);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException error) {
+            try {
+                if (temp != null) Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+        return true;
+    }
+
+    private static void value(Output out, Object value) {
+        if (value == null) {
+            out.write(NIL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.write(NUMBER);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof CharSequence) {
+            // A Rope is saved as the String it stands for
+            out.write(STRING);
+            out.writeString(value.toString());
+        } else if (value == Interpreter.uninitialized) {
+            out.write(UNINITIALIZED);
+        } else {
+            out.write(NATIVE);
+            out.writeString(nativeName(value));
+        }
+    }
+
+    // The natives are singletons, so a native in a global (under any name) is saved as the name it
+    // is defined under
+    private static String nativeName(Object value) {
+        for (Map.Entry<String, LoxCallable> function : Natives.FUNCTIONS.entrySet()) {
+            if (function.getValue() == value) return function.getKey();
+        }
+        return null;
+    }
+
+    // Big endian like DataOutputStream, which is what ByteBuffer reads by default
+    private static class Output {
+        byte[] bytes = new byte[4096];
+        int size = 0;
+
+        void write(int b) {
+            reserve(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeInt(int value) {
+            reserve(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value) {
+            reserve(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeString(String string) {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeInt(utf8.length);
+            reserve(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void reserve(int length) {
+            if (size + length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + length));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+// The characters the Scanner reads from. Positions are absolute offsets from the start of the input,
+// but an implementation only has to keep the part the Scanner can still look at: everything before
+// the last release() can be thrown away, which is how large files are scanned in constant memory.
+interface Source {
+    // True when there is no character at index, reads more of the input if it has to
+    boolean isAtEnd(int index);
+
+    char charAt(int index);
+
+    String substring(int start, int end);
+
+    // The Scanner won't look at anything before index again
+    void release(int index);
+
+    static Source of(String text) {
+        return new StringSource(text);
+    }
+
+    // Source for text which is already in memory, like a REPL line
+    class StringSource implements Source {
+        private final String text;
+
+        StringSource(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public boolean isAtEnd(int index) {
+            return index >= text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(index);
+        }
+
+        @Override
+        public String substring(int start, int end) {
+            return text.substring(start, end);
+        }
+
+        @Override
+        public void release(int index) {
+        }
+    }
+}
@@ -3,72 +3,74 @@ package com.craftinginterpreters.lox;
 import java.util.List;
 
 abstract class Stmt {
-    abstract <R> R accept(Visitor<R> visitor);
-
-    interface Visitor<R> {
-        R visitBlockStmt(Block stmt);
-
-        R visitExpressionStmt(Expression stmt);
+    // Line the statement starts on, set by the Parser. Only the profiler reads it
+    int line = 0;
+
+   interface Visitor<R> {
+   R visitBlockStmt(Block stmt);
+   R visitExpressionStmt(Expression stmt);
+   R visitPrintStmt(Print stmt);
+   R visitVarStmt(Var stmt);
+   }
+    static class Block extends Stmt {
+    Block(List<Stmt> statements) {
+        this.statements = statements;
+    }
 
-        R visitPrintStmt(Print stmt);
 
-        R visitVarStmt(Var stmt);
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitBlockStmt(this);
     }
 
-    static class Block extends Stmt {
         final List<Stmt> statements;
 
+    // Number of local variables declared directly in this block, set by the Resolver
+    int slots = 0;
+  }
+    static class Expression extends Stmt {
+    Expression(Expr expression) {
+        this.expression = expression;
+    }
 
-        Block(List<Stmt> statements) {
-            this.statements = statements;
-        }
 
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitBlockStmt(this);
-        }
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitExpressionStmt(this);
     }
 
-    static class Expression extends Stmt {
         final Expr expression;
+  }
+    static class Print extends Stmt {
+    Print(Expr expression) {
+        this.expression = expression;
+    }
 
 
-        Expression(Expr expression) {
-            this.expression = expression;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitExpressionStmt(this);
-        }
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitPrintStmt(this);
     }
 
-    static class Print extends Stmt {
         final Expr expression;
+  }
+    static class Var extends Stmt {
+    Var(Token name, Expr initializer) {
+        this.name = name;
+        this.initializer = initializer;
+    }
 
 
-        Print(Expr expression) {
-            this.expression = expression;
-        }
-
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitPrintStmt(this);
-        }
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitVarStmt(this);
     }
 
-    static class Var extends Stmt {
         final Token name;
-        final Expr initializer;
+    final Expr initializer;
 
-        Var(Token name, Expr initializer) {
-            this.name = name;
-            this.initializer = initializer;
-        }
+    // Slot of the variable in the block environment, -1 for globals
+    int slot = -1;
+  }
 
-        @Override
-        <R> R accept(Visitor<R> visitor) {
-            return visitor.visitVarStmt(this);
-        }
-    }
-}
+   abstract <R> R accept(Visitor<R> visitor);}
@@ -0,0 +1,130 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// Executable statements, the counterpart of ExprNode
+abstract class StmtNode extends Node {
+    abstract void execute(Environment frame);
+
+    static class Expression extends StmtNode {
+        private ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            expression.executeVoid(frame);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    static class Print extends StmtNode {
+        private ExprNode expression;
+        private final OutputSink out;
+
+        Print(ExprNode expression, OutputSink out) {
+            this.expression = adopt(expression);
+            this.out = out;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            out.println(expression.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            expression = (ExprNode) newChild;
+        }
+    }
+
+    static class DefineLocal extends StmtNode {
+        private ExprNode initializer;
+        private final int slot;
+
+        // Like WriteLocal, numbers go into the slot unboxed until a non number shows up
+        private boolean numeric = true;
+
+        DefineLocal(ExprNode initializer, int slot) {
+            this.initializer = adopt(initializer);
+            this.slot = slot;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            if (initializer == null) {
+                frame.defineAt(slot, Interpreter.uninitialized);
+                return;
+            }
+
+            if (numeric) {
+                try {
+                    frame.defineNumber(slot, initializer.executeDouble(frame));
+                } catch (UnexpectedResultException e) {
+                    numeric = false;
+                    frame.defineAt(slot, e.result);
+                }
+                return;
+            }
+
+            frame.defineAt(slot, initializer.execute(frame));
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            initializer = (ExprNode) newChild;
+        }
+    }
+
+    static class DefineGlobal extends StmtNode {
+        private ExprNode initializer;
+        private final Token name;
+        private final Environment globals;
+
+        DefineGlobal(ExprNode initializer, Token name, Environment globals) {
+            this.initializer = adopt(initializer);
+            this.name = name;
+            this.globals = globals;
+        }
+
+        @Override
+        void execute(Environment frame) {
+            Object value = Interpreter.uninitialized;
+            if (initializer != null) value = initializer.execute(frame);
+            globals.define(name, value);
+        }
+
+        @Override
+        void replaceChild(Node oldChild, Node newChild) {
+            initializer = (ExprNode) newChild;
+        }
+    }
+
+    static class Block extends StmtNode {
+        private final StmtNode[] statements;
+        private final int slots;
+        // Whether a spawn inside the block shares its frame with a task
+        private final boolean shared;
+
+        Block(List<StmtNode> statements, int slots, boolean shared) {
+            this.statements = statements.toArray(new StmtNode[0]);
+            this.slots = slots;
+            this.shared = shared;
+            for (StmtNode statement : this.statements) adopt(statement);
+        }
+
+        @Override
+        void execute(Environment frame) {
+            Environment environment = new Environment(frame, slots, shared);
+            for (StmtNode statement : statements) {
+                statement.execute(environment);
+            }
+        }
+    }
+}
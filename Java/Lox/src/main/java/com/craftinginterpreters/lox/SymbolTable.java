@@ -0,0 +1,99 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// Gives every distinct identifier an int id. The name is looked up straight from the source
+// characters, so a String is only created the first time a name is seen.
+// Keywords are added up front, so recognising them is the same lookup.
+class SymbolTable {
+    // Keyword i is symbol i
+    static final String[] KEYWORDS = {
+            "and", "class", "else", "false", "for", "fun", "if", "nil",
+            "or", "print", "return", "super", "this", "true", "var", "while",
+            "spawn",
+    };
+    static final TokenType[] KEYWORD_TYPES = {
+            TokenType.AND, TokenType.CLASS, TokenType.ELSE, TokenType.FALSE,
+            TokenType.FOR, TokenType.FUN, TokenType.IF, TokenType.NIL,
+            TokenType.OR, TokenType.PRINT, TokenType.RETURN, TokenType.SUPER,
+            TokenType.THIS, TokenType.TRUE, TokenType.VAR, TokenType.WHILE,
+            TokenType.SPAWN,
+    };
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int count = 0;
+
+    // Open addressing table of id + 1, 0 marks an empty bucket
+    private int[] table = new int[128];
+
+    SymbolTable() {
+        for (String keyword : KEYWORDS) {
+            intern(keyword);
+        }
+    }
+
+    int intern(String name) {
+        return intern(Source.of(name), 0, name.length());
+    }
+
+    int intern(Source source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = table.length - 1;
+        int bucket = mix(hash) & mask;
+        while (table[bucket] != 0) {
+            int id = table[bucket] - 1;
+            if (hashes[id] == hash && matches(names[id], source, start, end)) return id;
+            bucket = (bucket + 1) & mask;
+        }
+
+        // First time we see this name
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+        int id = count++;
+        names[id] = source.substring(start, end);
+        hashes[id] = hash;
+        table[bucket] = id + 1;
+
+        if (count * 2 > table.length) rehash();
+        return id;
+    }
+
+    String name(int id) {
+        return names[id];
+    }
+
+    // The keyword type for the symbol, or null if it's a plain identifier
+    TokenType keyword(int id) {
+        return id < KEYWORD_TYPES.length ? KEYWORD_TYPES[id] : null;
+    }
+
+    private static boolean matches(String name, Source source, int start, int end) {
+        if (name.length() != end - start) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != source.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    // The String hash is poor in the low bits for short names
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++) {
+            int bucket = mix(hashes[id]) & mask;
+            while (table[bucket] != 0) bucket = (bucket + 1) & mask;
+            table[bucket] = id + 1;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Table driven version of the Scanner, selected with --scanner=table. It gives exactly the same tokens and errors.
+//
+// Every character is first mapped to a class (digit, quote, '=', ...) with CLASS_OF, then the DFA
+// moves to the next state with a single lookup in NEXT. When there is no move for a character
+// the entry holds an action instead, usually "emit a token of this type", and the character is
+// left for the next token. Keywords are states of the DFA as well: every letter used in a keyword
+// has its own class, so "while" walks w -> wh -> whi -> whil -> while and the last state emits WHILE
+// without ever making a String.
+//
+// The tables are built once when the class is loaded.
+class TableScanner implements Lexer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // Character classes
+    private static final int C_OTHER = 0;
+    private static final int C_WHITESPACE = 1;
+    private static final int C_NEWLINE = 2;
+    private static final int C_DIGIT = 3;
+    // Letters that don't appear in any keyword, and '_'
+    private static final int C_LETTER = 4;
+    private static final int C_QUOTE = 5;
+    private static final int C_SLASH = 6;
+    private static final int C_DOT = 7;
+    private static final int C_EQUAL = 8;
+    private static final int C_BANG = 9;
+    private static final int C_LESS = 10;
+    private static final int C_GREATER = 11;
+    // One class for each of the other single character tokens, then one for each keyword letter
+    private static final int C_SINGLE = 12;
+    private static final String SINGLES = "(){}[]:,-+;*";
+    private static final TokenType[] SINGLE_TYPES = {
+            TokenType.LEFT_PAREN, TokenType.RIGHT_PAREN, TokenType.LEFT_BRACE, TokenType.RIGHT_BRACE,
+            TokenType.LEFT_BRACKET, TokenType.RIGHT_BRACKET, TokenType.COLON,
+            TokenType.COMMA, TokenType.MINUS, TokenType.PLUS, TokenType.SEMICOLON, TokenType.STAR,
+    };
+    private static final int C_KEYWORD_LETTER = C_SINGLE + SINGLES.length();
+
+    private static final int CLASSES;
+    // End of input is a class too, so the states decide what it means
+    private static final int C_EOF;
+
+    // Actions are stored in NEXT as -(action + 1)
+    private static final int A_SKIP = 0;
+    private static final int A_UNEXPECTED = 1;
+    private static final int A_UNTERMINATED = 2;
+    private static final int A_EOF = 3;
+    // "123." followed by something other than a digit, the dot is a token of its own
+    private static final int A_NUMBER_BACKUP = 4;
+    private static final int A_NUMBER = 5;
+    private static final int A_STRING = 6;
+    private static final int A_IDENTIFIER = 7;
+    // Emit a token with a fixed lexeme, the type is the offset from here
+    private static final int A_TOKEN = 8;
+    // Emit a keyword, the keyword's symbol id is the offset from here
+    private static final int A_KEYWORD = A_TOKEN + TYPES.length;
+
+    // Characters are all ASCII in Lox, everything else is C_OTHER
+    private static final byte[] CLASS_OF = new byte[128];
+
+    // NEXT[state + class] is either the next state or an action. States are stored already
+    // multiplied by CLASSES, so the start state is 0 and the row of a state is just its value.
+    private static final short[] NEXT;
+    private static final int START = 0;
+
+    static {
+        for (int c = 0; c < CLASS_OF.length; c++) {
+            if (c >= '0' && c <= '9') CLASS_OF[c] = C_DIGIT;
+            else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_') CLASS_OF[c] = C_LETTER;
+        }
+        CLASS_OF[' '] = C_WHITESPACE;
+        CLASS_OF['\r'] = C_WHITESPACE;
+        CLASS_OF['\t'] = C_WHITESPACE;
+        CLASS_OF['\n'] = C_NEWLINE;
+        CLASS_OF['"'] = C_QUOTE;
+        CLASS_OF['/'] = C_SLASH;
+        CLASS_OF['.'] = C_DOT;
+        CLASS_OF['='] = C_EQUAL;
+        CLASS_OF['!'] = C_BANG;
+        CLASS_OF['<'] = C_LESS;
+        CLASS_OF['>'] = C_GREATER;
+        for (int i = 0; i < SINGLES.length(); i++) {
+            CLASS_OF[SINGLES.charAt(i)] = (byte) (C_SINGLE + i);
+        }
+
+        int classes = C_KEYWORD_LETTER;
+        for (String keyword : SymbolTable.KEYWORDS) {
+            for (char c : keyword.toCharArray()) {
+                if (CLASS_OF[c] == C_LETTER) CLASS_OF[c] = (byte) classes++;
+            }
+        }
+        C_EOF = classes++;
+        CLASSES = classes;
+
+        NEXT = new TableBuilder().build();
+    }
+
+    private final Source source;
+    private final SymbolTable symbols = new SymbolTable();
+    private final TokenBuffer tokens;
+    private final ErrorReporter reporter;
+
+    // Set once the EOF token has been added
+    private boolean done = false;
+
+    private int start = 0;
+    private int current = 0;
+    private int line = 1;
+    // Offset of the first character of the current line, and the column the current token starts at
+    private int lineStart = 0;
+    private int column = 1;
+    // Line the current token starts on, a string can go on past it
+    private int startLine = 1;
+
+    TableScanner(String source) {
+        this(Source.of(source), new ErrorReporter(System.err));
+    }
+
+    TableScanner(Source source, ErrorReporter reporter) {
+        this.source = source;
+        this.reporter = reporter;
+        this.tokens = new TokenBuffer(source, symbols);
+    }
+
+    @Override
+    public TokenBuffer scanTokens() {
+        LoxEvents.Scan event = LoxEvents.beginScan();
+
+        while (!done) {
+            scanNext();
+        }
+
+        LoxEvents.endScan(event, tokens.end());
+        return tokens;
+    }
+
+    @Override
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    @Override
+    public void scanNext() {
+        int end = tokens.end();
+        while (!done && tokens.end() == end) {
+            scanToken();
+        }
+    }
+
+    // Runs the DFA from the start state until it hits an action
+    private void scanToken() {
+        start = current;
+        column = start - lineStart + 1;
+        startLine = line;
+        source.release(Math.min(start, tokens.firstStart()));
+
+        int state = START;
+        for (;;) {
+            char c = 0;
+            int charClass;
+            if (source.isAtEnd(current)) {
+                charClass = C_EOF;
+            } else {
+                c = source.charAt(current);
+                charClass = c < 128 ? CLASS_OF[c] : C_OTHER;
+            }
+
+            int next = NEXT[state + charClass];
+            if (next < 0) {
+                perform(-next - 1);
+                return;
+            }
+
+            // Only whitespace and strings take newlines, comments stop in front of them
+            current++;
+            if (c == '\n') {
+                line++;
+                lineStart = current;
+            }
+            state = next;
+        }
+    }
+
+    private void perform(int action) {
+        switch (action) {
+            case A_SKIP:
+                return;
+            case A_UNEXPECTED:
+                reporter.error(start, line, column, "Unexpected character.");
+                return;
+            case A_UNTERMINATED:
+                reporter.error(current, line, current - lineStart + 1, "Unterminated string.");
+                return;
+            case A_EOF:
+                tokens.add(TokenType.EOF, current, 0, line, column, -1, 0, null);
+                done = true;
+                return;
+            case A_NUMBER_BACKUP:
+                // The number ended in a dot which isn't part of it
+                current--;
+                number();
+                return;
+            case A_NUMBER:
+                number();
+                return;
+            case A_STRING:
+                tokens.add(TokenType.STRING, start, current - start, startLine, column, -1, 0,
+                        source.substring(start + 1, current - 1));
+                return;
+            case A_IDENTIFIER:
+                tokens.add(TokenType.IDENTIFIER, start, current - start, line, column,
+                        symbols.intern(source, start, current), 0, null);
+                return;
+            default:
+                if (action >= A_KEYWORD) {
+                    int symbol = action - A_KEYWORD;
+                    tokens.add(SymbolTable.KEYWORD_TYPES[symbol], start, current - start, line, column, symbol, 0, null);
+                } else {
+                    tokens.add(TYPES[action - A_TOKEN], start, current - start, line, column, -1, 0, null);
+                }
+        }
+    }
+
+    private void number() {
+        tokens.add(TokenType.NUMBER, start, current - start, line, column, -1,
+                Scanner.numberValue(source, start, current), null);
+    }
+
+    // Fills in NEXT, state by state. Only used by the static initializer.
+    private static class TableBuilder {
+        private short[] next = new short[0];
+
+        private static short action(int action) {
+            return (short) -(action + 1);
+        }
+
+        // A new state where every class leads to the action, callers override the real moves
+        private int state(int action) {
+            int state = next.length;
+            next = Arrays.copyOf(next, state + CLASSES);
+            for (int c = 0; c < CLASSES; c++) next[state + c] = action(action);
+            return state;
+        }
+
+        private void move(int from, int charClass, int to) {
+            next[from + charClass] = (short) to;
+        }
+
+        private static boolean isIdentifierClass(int charClass) {
+            return charClass == C_DIGIT || charClass == C_LETTER
+                    || (charClass >= C_KEYWORD_LETTER && charClass < C_EOF);
+        }
+
+        short[] build() {
+            int start = state(A_UNEXPECTED);
+            // Anything we don't know is consumed on its own and reported
+            move(start, C_OTHER, state(A_UNEXPECTED));
+            next[start + C_EOF] = action(A_EOF);
+
+            int whitespace = state(A_SKIP);
+            for (int c : new int[]{C_WHITESPACE, C_NEWLINE}) {
+                move(start, c, whitespace);
+                move(whitespace, c, whitespace);
+            }
+
+            for (int i = 0; i < SINGLES.length(); i++) {
+                move(start, C_SINGLE + i, state(A_TOKEN + SINGLE_TYPES[i].ordinal()));
+            }
+            move(start, C_DOT, state(A_TOKEN + TokenType.DOT.ordinal()));
+
+            operator(start, C_BANG, TokenType.BANG, TokenType.BANG_EQUAL);
+            operator(start, C_EQUAL, TokenType.EQUAL, TokenType.EQUAL_EQUAL);
+            operator(start, C_LESS, TokenType.LESS, TokenType.LESS_EQUAL);
+            operator(start, C_GREATER, TokenType.GREATER, TokenType.GREATER_EQUAL);
+
+            // A comment runs up to the newline, which is left for the whitespace state
+            int slash = state(A_TOKEN + TokenType.SLASH.ordinal());
+            int comment = state(A_SKIP);
+            move(start, C_SLASH, slash);
+            move(slash, C_SLASH, comment);
+            for (int c = 0; c < CLASSES; c++) {
+                if (c != C_NEWLINE && c != C_EOF) move(comment, c, comment);
+            }
+
+            int string = state(A_UNTERMINATED);
+            int stringEnd = state(A_STRING);
+            move(start, C_QUOTE, string);
+            for (int c = 0; c < CLASSES; c++) {
+                if (c != C_EOF) move(string, c, c == C_QUOTE ? stringEnd : string);
+            }
+
+            int integer = state(A_NUMBER);
+            int dot = state(A_NUMBER_BACKUP);
+            int fraction = state(A_NUMBER);
+            move(start, C_DIGIT, integer);
+            move(integer, C_DIGIT, integer);
+            move(integer, C_DOT, dot);
+            move(dot, C_DIGIT, fraction);
+            move(fraction, C_DIGIT, fraction);
+
+            int identifier = state(A_IDENTIFIER);
+            identifierMoves(identifier, identifier);
+            identifierMoves(start, identifier);
+            move(start, C_DIGIT, integer);
+
+            // The keyword trie, one state per keyword prefix. A letter which
+            // doesn't continue a keyword drops back to the plain identifier state.
+            Map<String, Integer> prefixes = new HashMap<>();
+            prefixes.put("", start);
+            for (int id = 0; id < SymbolTable.KEYWORDS.length; id++) {
+                String keyword = SymbolTable.KEYWORDS[id];
+                for (int length = 1; length <= keyword.length(); length++) {
+                    String prefix = keyword.substring(0, length);
+                    Integer state = prefixes.get(prefix);
+                    if (state == null) {
+                        state = state(A_IDENTIFIER);
+                        identifierMoves(state, identifier);
+                        prefixes.put(prefix, state);
+                        move(prefixes.get(keyword.substring(0, length - 1)), CLASS_OF[prefix.charAt(length - 1)], state);
+                    }
+                    if (length == keyword.length()) {
+                        for (int c = 0; c < CLASSES; c++) {
+                            if (!isIdentifierClass(c)) next[state + c] = action(A_KEYWORD + id);
+                        }
+                    }
+                }
+            }
+
+            return next;
+        }
+
+        private void identifierMoves(int from, int identifier) {
+            for (int c = 0; c < CLASSES; c++) {
+                if (isIdentifierClass(c)) move(from, c, identifier);
+            }
+        }
+
+        private void operator(int start, int charClass, TokenType single, TokenType withEqual) {
+            int first = state(A_TOKEN + single.ordinal());
+            move(start, charClass, first);
+            move(first, C_EQUAL, state(A_TOKEN + withEqual.ordinal()));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Runs the blocks started with spawn. Every engine which supports spawn has one of these.
+//
+// On a JDK with virtual threads each task gets its own virtual thread, so a script can have thousands
+// of tasks blocked in receive() or sleep() while only a few OS threads exist. We still compile for 17,
+// so the virtual thread factory is looked up when the class loads, older JDKs use a cached pool of
+// daemon platform threads instead.
+//
+// A runtime error ends only the task it happened in, it is reported like any other runtime error.
+class Tasks {
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreads();
+
+    // Value of spawn { ... }, join() waits for it
+    static class Task {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        void join() throws InterruptedException {
+            done.await();
+        }
+
+        @Override
+        public String toString() {
+            return "<task>";
+        }
+    }
+
+    private final ErrorReporter reporter;
+    private ExecutorService platformThreads;
+    // Tasks which haven't finished yet, guarded by this
+    private int running = 0;
+
+    Tasks(ErrorReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    Task spawn(Runnable body) {
+        Task task = new Task();
+        synchronized (this) {
+            running++;
+        }
+
+        Runnable run = () -> {
+            try {
+                body.run();
+            } catch (RuntimeError error) {
+                reporter.runtimeError(error);
+            } finally {
+                task.done.countDown();
+                finished();
+            }
+        };
+
+        if (VIRTUAL_THREADS != null) {
+            VIRTUAL_THREADS.newThread(run).start();
+        } else {
+            platformThreads().execute(run);
+        }
+        return task;
+    }
+
+    // A program is only finished once all the tasks it started are
+    synchronized void awaitAll() {
+        while (running > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private synchronized void finished() {
+        if (--running == 0) notifyAll();
+    }
+
+    private synchronized ExecutorService platformThreads() {
+        if (platformThreads == null) {
+            platformThreads = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "lox-task");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return platformThreads;
+    }
+
+    // Thread.ofVirtual().factory(), or null before JDK 21
+    private static ThreadFactory virtualThreads() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            Object virtual = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtual)).invoke();
+            return (ThreadFactory) lookup.findVirtual(builder, "factory", MethodType.methodType(ThreadFactory.class))
+                    .invoke(virtual);
+        } catch (Throwable unavailable) {
+            return null;
+        }
+    }
+}
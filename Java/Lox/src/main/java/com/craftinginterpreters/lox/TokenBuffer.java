@@ -0,0 +1,178 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// The tokens produced by the Scanner, stored as parallel arrays instead of one Token object each.
+// A token is just its index here. Lexeme strings aren't stored at all: identifiers have a symbol id,
+// the other tokens either have a fixed spelling or a literal value, and the few places which need a
+// real Token (AST nodes, error messages) ask for one with token(index).
+//
+// Indexes are absolute. When the Parser pulls tokens from the Scanner, the tokens it is done with are
+// dropped from the front with discardBefore(), so the buffer stays small however long the input is.
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final String[] FIXED_LEXEMES = fixedLexemes();
+
+    private final Source source;
+    private final SymbolTable symbols;
+
+    private byte[] types = new byte[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    // 1-based, of the token's first character. Only error messages use it
+    private int[] columns = new int[256];
+    // Symbol id for identifiers and keywords, -1 for everything else
+    private int[] symbolIds = new int[256];
+    private double[] numbers = new double[256];
+    private String[] strings = new String[256];
+
+    // Absolute index of the first token still in the arrays, and how many there are
+    private int first = 0;
+    private int count = 0;
+
+    TokenBuffer(Source source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    void add(TokenType type, int start, int length, int line, int column, int symbol, double number, String string) {
+        if (count == types.length) grow();
+
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        columns[count] = column;
+        symbolIds[count] = symbol;
+        numbers[count] = number;
+        strings[count] = string;
+        count++;
+    }
+
+    // Index of the oldest token still in the buffer
+    int first() {
+        return first;
+    }
+
+    // One past the index of the last token
+    int end() {
+        return first + count;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index - first]];
+    }
+
+    int line(int index) {
+        return lines[index - first];
+    }
+
+    int start(int index) {
+        return starts[index - first];
+    }
+
+    int length(int index) {
+        return lengths[index - first];
+    }
+
+    int column(int index) {
+        return columns[index - first];
+    }
+
+    int symbol(int index) {
+        return symbolIds[index - first];
+    }
+
+    Object literal(int index) {
+        switch (type(index)) {
+            case NUMBER: return numbers[index - first];
+            case STRING: return strings[index - first];
+            default: return null;
+        }
+    }
+
+    String lexeme(int index) {
+        int i = index - first;
+        TokenType type = TYPES[types[i]];
+
+        if (symbolIds[i] >= 0) return symbols.name(symbolIds[i]);
+        if (FIXED_LEXEMES[type.ordinal()] != null) return FIXED_LEXEMES[type.ordinal()];
+        if (type == TokenType.STRING) return "\"" + strings[i] + "\"";
+        return source.substring(starts[i], starts[i] + lengths[i]);
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), line(index), symbol(index));
+    }
+
+    // Source offset of the oldest token we still have, the Scanner must keep the text from here on
+    int firstStart() {
+        return count == 0 ? Integer.MAX_VALUE : starts[0];
+    }
+
+    void discardBefore(int index) {
+        int drop = index - first;
+        if (drop <= 0) return;
+
+        int keep = count - drop;
+        System.arraycopy(types, drop, types, 0, keep);
+        System.arraycopy(starts, drop, starts, 0, keep);
+        System.arraycopy(lengths, drop, lengths, 0, keep);
+        System.arraycopy(lines, drop, lines, 0, keep);
+        System.arraycopy(columns, drop, columns, 0, keep);
+        System.arraycopy(symbolIds, drop, symbolIds, 0, keep);
+        System.arraycopy(numbers, drop, numbers, 0, keep);
+        System.arraycopy(strings, drop, strings, 0, keep);
+        Arrays.fill(strings, keep, count, null);
+
+        first = index;
+        count = keep;
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        strings = Arrays.copyOf(strings, capacity);
+    }
+
+    // The lexeme every token of this type has, or null if it depends on the source
+    static String fixedLexeme(TokenType type) {
+        return FIXED_LEXEMES[type.ordinal()];
+    }
+
+    // Tokens that are always spelled the same way don't need their text kept around
+    private static String[] fixedLexemes() {
+        String[] lexemes = new String[TYPES.length];
+        lexemes[TokenType.LEFT_PAREN.ordinal()] = "(";
+        lexemes[TokenType.RIGHT_PAREN.ordinal()] = ")";
+        lexemes[TokenType.LEFT_BRACE.ordinal()] = "{";
+        lexemes[TokenType.RIGHT_BRACE.ordinal()] = "}";
+        lexemes[TokenType.LEFT_BRACKET.ordinal()] = "[";
+        lexemes[TokenType.RIGHT_BRACKET.ordinal()] = "]";
+        lexemes[TokenType.COLON.ordinal()] = ":";
+        lexemes[TokenType.COMMA.ordinal()] = ",";
+        lexemes[TokenType.DOT.ordinal()] = ".";
+        lexemes[TokenType.MINUS.ordinal()] = "-";
+        lexemes[TokenType.PLUS.ordinal()] = "+";
+        lexemes[TokenType.SEMICOLON.ordinal()] = ";";
+        lexemes[TokenType.SLASH.ordinal()] = "/";
+        lexemes[TokenType.STAR.ordinal()] = "*";
+        lexemes[TokenType.BANG.ordinal()] = "!";
+        lexemes[TokenType.BANG_EQUAL.ordinal()] = "!=";
+        lexemes[TokenType.EQUAL.ordinal()] = "=";
+        lexemes[TokenType.EQUAL_EQUAL.ordinal()] = "==";
+        lexemes[TokenType.GREATER.ordinal()] = ">";
+        lexemes[TokenType.GREATER_EQUAL.ordinal()] = ">=";
+        lexemes[TokenType.LESS.ordinal()] = "<";
+        lexemes[TokenType.LESS_EQUAL.ordinal()] = "<=";
+        lexemes[TokenType.EOF.ordinal()] = "";
+        return lexemes;
+    }
+}
@@ -0,0 +1,15 @@
+package com.craftinginterpreters.lox;
+
+// Thrown by the typed execute methods of a node when the value it produced is not of the expected type.
+// It carries the value so the caller can continue on the generic path without evaluating anything twice.
+// It is only thrown while a node is being rewritten, so we skip the stack trace.
+class UnexpectedResultException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    final Object result;
+
+    UnexpectedResultException(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -0,0 +1,271 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Stack based virtual machine that runs the Chunk produced by the Compiler.
+// It has to behave exactly like the Interpreter, so all the value semantics
+// (truthiness, equality, printing) are shared with it.
+class VM {
+    // Globals are kept across runs so the REPL works the same way as with the Interpreter
+    private final Map<String, Object> globals = new HashMap<>();
+
+    private final OutputSink out;
+    private final ErrorReporter reporter;
+
+    private Chunk chunk;
+    private Object[] stack;
+    private int stackTop;
+    private int ip;
+
+    VM() {
+        this(new OutputSink(System.out), new ErrorReporter(System.err));
+    }
+
+    VM(OutputSink out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+        globals.putAll(Natives.FUNCTIONS);
+    }
+
+    // Nil is stored as null
+    Map<String, Object> globals() {
+        return globals;
+    }
+
+    void interpret(Chunk chunk) {
+        this.chunk = chunk;
+        this.stack = new Object[chunk.maxStack];
+        this.stackTop = 0;
+        this.ip = 0;
+
+        try {
+            run();
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+
+    private void run() {
+        final byte[] code = chunk.code;
+        final Object[] constants = chunk.constants;
+
+        for (; ; ) {
+            byte instruction = code[ip++];
+            switch (instruction) {
+                case OpCode.CONSTANT:
+                    push(constants[readShort(code)]);
+                    break;
+                case OpCode.NIL:
+                    push(null);
+                    break;
+                case OpCode.TRUE:
+                    push(true);
+                    break;
+                case OpCode.FALSE:
+                    push(false);
+                    break;
+                case OpCode.UNINITIALIZED:
+                    push(Interpreter.uninitialized);
+                    break;
+                case OpCode.POP:
+                    stack[--stackTop] = null;
+                    break;
+                case OpCode.POP_N: {
+                    int count = readShort(code);
+                    for (int i = 0; i < count; i++) stack[--stackTop] = null;
+                    break;
+                }
+                case OpCode.GET_LOCAL: {
+                    Object value = stack[readShort(code)];
+                    if (value == Interpreter.uninitialized) {
+                        throw error("Variable must be initialized before use.");
+                    }
+                    push(value);
+                    break;
+                }
+                case OpCode.SET_LOCAL:
+                    stack[readShort(code)] = peek();
+                    break;
+                case OpCode.DEFINE_GLOBAL:
+                    globals.put((String) constants[readShort(code)], pop());
+                    break;
+                case OpCode.GET_GLOBAL: {
+                    String name = (String) constants[readShort(code)];
+                    Object value = globals.get(name);
+                    if (value == null && !globals.containsKey(name)) {
+                        throw error("Undefined variable '" + name + "'.");
+                    }
+                    if (value == Interpreter.uninitialized) {
+                        throw error("Variable must be initialized before use.");
+                    }
+                    push(value);
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    String name = (String) constants[readShort(code)];
+                    if (!globals.containsKey(name)) {
+                        throw error("Undefined variable '" + name + "'.");
+                    }
+                    globals.put(name, peek());
+                    break;
+                }
+                case OpCode.EQUAL: {
+                    Object right = pop();
+                    push(Interpreter.isEqual(pop(), right));
+                    break;
+                }
+                case OpCode.NOT_EQUAL: {
+                    Object right = pop();
+                    push(!Interpreter.isEqual(pop(), right));
+                    break;
+                }
+                case OpCode.GREATER: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    push((double) pop() > right);
+                    break;
+                }
+                case OpCode.GREATER_EQUAL: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    push((double) pop() >= right);
+                    break;
+                }
+                case OpCode.LESS: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    push((double) pop() < right);
+                    break;
+                }
+                case OpCode.LESS_EQUAL: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    push((double) pop() <= right);
+                    break;
+                }
+                case OpCode.ADD: {
+                    Object right = pop();
+                    Object left = pop();
+                    if (left instanceof Double && right instanceof Double) {
+                        push((double) left + (double) right);
+                    } else if (left instanceof CharSequence && right instanceof CharSequence) {
+                        push(Rope.concat((CharSequence) left, (CharSequence) right));
+                    } else {
+                        throw error("Operands must be two numbers or two strings.");
+                    }
+                    break;
+                }
+                case OpCode.SUBTRACT: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    push((double) pop() - right);
+                    break;
+                }
+                case OpCode.MULTIPLY: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    push((double) pop() * right);
+                    break;
+                }
+                case OpCode.DIVIDE: {
+                    checkNumberOperands();
+                    double right = (double) pop();
+                    if (right == 0) {
+                        throw error("Cannot divide by Zero");
+                    }
+                    push((double) pop() / right);
+                    break;
+                }
+                case OpCode.NOT:
+                    push(!Interpreter.isTruthy(pop()));
+                    break;
+                case OpCode.NEGATE:
+                    if (!(peek() instanceof Double)) {
+                        throw error("Operand must be a number.");
+                    }
+                    push(-(double) pop());
+                    break;
+                case OpCode.PRINT:
+                    out.println(pop());
+                    break;
+                case OpCode.CALL: {
+                    Object[] arguments = new Object[readShort(code)];
+                    Token paren = (Token) constants[readShort(code)];
+                    for (int i = arguments.length - 1; i >= 0; i--) {
+                        arguments[i] = pop();
+                    }
+                    push(Interpreter.call(pop(), arguments, paren));
+                    break;
+                }
+                case OpCode.ARRAY: {
+                    int count = readShort(code);
+                    LoxArray array = new LoxArray(count);
+                    for (int i = stackTop - count; i < stackTop; i++) {
+                        array.push(stack[i]);
+                        stack[i] = null;
+                    }
+                    stackTop -= count;
+                    push(array);
+                    break;
+                }
+                case OpCode.MAP: {
+                    int count = readShort(code);
+                    LoxMap map = new LoxMap(count);
+                    for (int i = stackTop - count * 2; i < stackTop; i += 2) {
+                        map.put(stack[i], stack[i + 1]);
+                        stack[i] = null;
+                        stack[i + 1] = null;
+                    }
+                    stackTop -= count * 2;
+                    push(map);
+                    break;
+                }
+                case OpCode.GET_INDEX: {
+                    Token bracket = (Token) constants[readShort(code)];
+                    Object index = pop();
+                    push(Interpreter.index(bracket, pop(), index));
+                    break;
+                }
+                case OpCode.SET_INDEX: {
+                    Token bracket = (Token) constants[readShort(code)];
+                    Object value = pop();
+                    Object index = pop();
+                    push(Interpreter.setIndex(bracket, pop(), index, value));
+                    break;
+                }
+                case OpCode.RETURN:
+                    return;
+            }
+        }
+    }
+
+    private int readShort(byte[] code) {
+        ip += 2;
+        return ((code[ip - 2] & 0xff) << 8) | (code[ip - 1] & 0xff);
+    }
+
+    private void push(Object value) {
+        stack[stackTop++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--stackTop];
+        stack[stackTop] = null;
+        return value;
+    }
+
+    private Object peek() {
+        return stack[stackTop - 1];
+    }
+
+    private void checkNumberOperands() {
+        if (stack[stackTop - 2] instanceof Double && stack[stackTop - 1] instanceof Double) return;
+        throw error("Operands must be numbers.");
+    }
+
+    // The instruction that failed is the one just before ip
+    private RuntimeError error(String message) {
+        return new RuntimeError(chunk.getLine(ip - 1), message);
+    }
+}
@@ -1,7 +1,15 @@
 import os
 import sys
 
-def defineType(file, base_name, class_name, fields):
+# Fields the Parser and the Resolver fill in after a node is made, written after the final ones.
+# Each is (comment, [declaration with its initial value, ...]).
+def defineMutableFields(file, indent, mutable):
+    comment, declarations = mutable
+    file.write(indent + "// " + comment + "\n")
+    for declaration in declarations:
+        file.write(indent + declaration + ";\n")
+
+def defineType(file, base_name, class_name, fields, mutable):
     file.write("    static class " + class_name + " extends " + base_name + " {\n");
     file.write("    " + class_name + "(" + fields + ") {\n");
 
@@ -25,6 +33,10 @@ def defineType(file, base_name, class_name, fields):
     for field in fields_list:
         file.write("    final " + field + ";\n");
 
+    if mutable is not None:
+        file.write("\n")
+        defineMutableFields(file, "    ", mutable)
+
     file.write("  }\n");
 
 def defineVisitor(f, base_name, types):
@@ -37,7 +49,7 @@ def defineVisitor(f, base_name, types):
     f.write("   }\n")
 
 
-def defineAst(output_dir, base_name, types):
+def defineAst(output_dir, base_name, types, mutable={}, base_mutable=None):
     path = os.path.join(output_dir, base_name + '.java')
 
     with open(path, 'w') as f:
@@ -46,6 +58,9 @@ def defineAst(output_dir, base_name, types):
         f.write("import java.util.List;\n")
         f.write("\n")
         f.write("abstract class " + base_name + " {\n")
+        if base_mutable is not None:
+            defineMutableFields(f, "    ", base_mutable)
+            f.write("\n")
 
         defineVisitor(f, base_name, types)
 
@@ -53,7 +68,7 @@ def defineAst(output_dir, base_name, types):
         for type in types:
             class_name = type.split(":")[0].strip()
             fields = type.split(":")[1].strip()
-            defineType(f, base_name, class_name, fields)
+            defineType(f, base_name, class_name, fields, mutable.get(class_name))
 
         f.write("\n")
         f.write("   abstract <R> R accept(Visitor<R> visitor);")
@@ -72,21 +87,36 @@ def main(argv):
         return
 
     types = [
+        "Array     : Token bracket, List<Expr> elements",
         "Assign   : Token name, Expr value",
         "Binary    : Expr left, Token operator, Expr right",
+        "Call      : Expr callee, Token paren, List<Expr> arguments",
         "Grouping  : Expr expression",
+        "Index     : Expr object, Token bracket, Expr index",
         "Literal   : Object value",
+        "Map       : Token brace, List<Expr> keys, List<Expr> values",
+        "SetIndex  : Expr object, Token bracket, Expr index, Expr value",
+        "Spawn     : Token keyword, Stmt.Block body",
         "Unary     : Token operator, Expr right",
         "Variable  : Token name",
     ]
 
-    defineAst(output_dir, "Expr", types);
+    resolved = ("Filled in by the Resolver, depth -1 means the variable is a global",
+                ["int depth = -1", "int slot = -1"])
+    defineAst(output_dir, "Expr", types, {
+      "Assign": resolved,
+      "Variable": resolved,
+    });
     defineAst(output_dir, "Stmt", [
       "Block : List<Stmt> statements",
       "Expression : Expr expression",
       "Print      : Expr expression",
       "Var        : Token name, Expr initializer"
-    ]);
+    ], {
+      "Block": ("Number of local variables declared directly in this block, set by the Resolver",
+                ["int slots = 0"]),
+      "Var": ("Slot of the variable in the block environment, -1 for globals", ["int slot = -1"]),
+    }, ("Line the statement starts on, set by the Parser. Only the profiler reads it", ["int line = 0"]));
 
 if __name__ == "__main__":
     main(sys.argv)